@@ -338,10 +338,9 @@ show_final_info() {
     echo "Quick Test Commands:"
     echo "==================="
     echo "# Upload a file"
-    echo "curl -X POST \"http://localhost:$APP_PORT/api/freight-fox/s3-bucket/upload\" \\"
+    echo "curl -X POST \"http://localhost:$APP_PORT/api/freight-fox/s3-bucket/upload?userName=test-user\" \\"
     echo "  -H \"Content-Type: multipart/form-data\" \\"
-    echo "  -F \"file=@your-file.pdf\" \\"
-    echo "  -F \"userName=test-user\""
+    echo "  -F \"file=@your-file.pdf\""
     echo ""
     echo "# Search files by username"
     echo "curl \"http://localhost:$APP_PORT/api/freight-fox/s3-bucket/search?userName=test-user\""
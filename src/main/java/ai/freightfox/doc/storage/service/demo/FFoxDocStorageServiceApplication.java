@@ -2,8 +2,10 @@ package ai.freightfox.doc.storage.service.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class FFoxDocStorageServiceApplication {
 
 	public static void main(String[] args) {
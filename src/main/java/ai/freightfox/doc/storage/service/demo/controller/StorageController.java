@@ -1,18 +1,49 @@
 package ai.freightfox.doc.storage.service.demo.controller;
 
+import ai.freightfox.doc.storage.service.demo.dto.request.CompleteUploadRequest;
+import ai.freightfox.doc.storage.service.demo.dto.request.FileSearchFilter;
 import ai.freightfox.doc.storage.service.demo.dto.response.ApiSuccessResponse;
 import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.PresignedUploadResponse;
 import ai.freightfox.doc.storage.service.demo.dto.response.SearchResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.UploadSessionResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.UsageResponse;
+import ai.freightfox.doc.storage.service.demo.model.FileDownload;
+import ai.freightfox.doc.storage.service.demo.model.FileListing;
+import ai.freightfox.doc.storage.service.demo.model.SearchPage;
+import ai.freightfox.doc.storage.service.demo.service.FileKeyMigrationService;
+import ai.freightfox.doc.storage.service.demo.service.PresignedUploadService;
+import ai.freightfox.doc.storage.service.demo.service.RateLimiter;
+import ai.freightfox.doc.storage.service.demo.service.ResumableUploadService;
 import ai.freightfox.doc.storage.service.demo.service.StorageService;
+import ai.freightfox.doc.storage.service.demo.service.UsageTracker;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.List;
 
 @RestController
@@ -20,42 +51,286 @@ import java.util.List;
 @Validated
 public class StorageController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     @Autowired
     private StorageService storageService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FileKeyMigrationService fileKeyMigrationService;
+
+    @Autowired
+    private PresignedUploadService presignedUploadService;
+
+    @Autowired
+    private ResumableUploadService resumableUploadService;
+
+    @Autowired
+    private UsageTracker usageTracker;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
     @Operation(summary = "Search Files by Username and Filename")
     @GetMapping("/search")
     public ResponseEntity<SearchResponse> searchFiles(
             @RequestParam @NotBlank(message = "Username is required") String userName, 
             @RequestParam(required = false) String searchTerm, 
             @RequestParam(defaultValue = "0") int page, 
-            @RequestParam(defaultValue = "10") int size){
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String direction,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedAfter,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedBefore,
+            @RequestParam(required = false) Long minSize,
+            @RequestParam(required = false) Long maxSize,
+            @RequestParam(required = false) String contentType,
+            WebRequest webRequest){
 
-        List<FileMetadataResponse> files = storageService.searchFiles(userName, searchTerm, page, size);
-        SearchResponse response = SearchResponse.getSearchResponse(files, userName, searchTerm);
-        return ResponseEntity.ok(response);
+        rateLimiter.acquire(userName, RateLimiter.Operation.SEARCH);
+        FileSearchFilter filter = FileSearchFilter.builder()
+                .sort(sort)
+                .direction(direction)
+                .modifiedAfter(modifiedAfter)
+                .modifiedBefore(modifiedBefore)
+                .minSize(minSize)
+                .maxSize(maxSize)
+                .contentType(contentType)
+                .build();
+        SearchPage result = storageService.findFiles(userName, searchTerm, filter, page, size);
+        return searchResponse(result, userName, searchTerm, webRequest);
     }
 
     @Operation(summary = "Upload a File")
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<FileMetadataResponse> uploadFile(
             @RequestParam @NotBlank(message = "Username is required") String userName, 
-            @RequestParam("file") MultipartFile file){
+            @RequestParam("file") MultipartFile file,
+            @RequestAttribute(name = UploadRateLimitFilter.CHARGED_ATTRIBUTE, required = false) Boolean charged){
 
+        // Usually charged from Content-Length before the body was read
+        if (charged == null) {
+            rateLimiter.acquire(userName, RateLimiter.Operation.UPLOAD_BYTES, file.getSize());
+        }
         FileMetadataResponse response = storageService.uploadFile(userName, file);
         return ResponseEntity.ok(response);
     }
 
+    @Operation(summary = "Get a Presigned URL to Upload a File Directly to S3")
+    @PostMapping("/upload/presign")
+    public ResponseEntity<PresignedUploadResponse> presignUpload(
+            @RequestParam @NotBlank(message = "Username is required") String userName,
+            @RequestParam @NotBlank(message = "Filename is required") String fileName,
+            @RequestParam long fileSize,
+            @RequestParam(required = false) String contentType) {
+
+        rateLimiter.acquire(userName, RateLimiter.Operation.UPLOAD_BYTES, fileSize);
+        PresignedUploadResponse response = presignedUploadService.presignUpload(userName, fileName, contentType, fileSize);
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Start a Presigned Multipart Upload")
+    @PostMapping("/upload/multipart/initiate")
+    public ResponseEntity<PresignedUploadResponse> initiateMultipartUpload(
+            @RequestParam @NotBlank(message = "Username is required") String userName,
+            @RequestParam @NotBlank(message = "Filename is required") String fileName,
+            @RequestParam long fileSize,
+            @RequestParam int partCount,
+            @RequestParam(required = false) String contentType) {
+
+        rateLimiter.acquire(userName, RateLimiter.Operation.UPLOAD_BYTES, fileSize);
+        PresignedUploadResponse response = presignedUploadService.initiateMultipartUpload(userName, fileName, contentType,
+                fileSize, partCount);
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Complete a Presigned Upload")
+    @PostMapping("/upload/complete")
+    public ResponseEntity<FileMetadataResponse> completeUpload(@Valid @RequestBody CompleteUploadRequest request) {
+        FileMetadataResponse response = presignedUploadService.completeUpload(request);
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Abort a Presigned Multipart Upload")
+    @DeleteMapping("/upload/multipart/abort")
+    public ResponseEntity<ApiSuccessResponse> abortMultipartUpload(
+            @RequestParam @NotBlank(message = "Username is required") String userName,
+            @RequestParam @NotBlank(message = "Filename is required") String fileName,
+            @RequestParam @NotBlank(message = "Upload id is required") String uploadId) {
+
+        presignedUploadService.abortMultipartUpload(userName, fileName, uploadId);
+        ApiSuccessResponse response = new ApiSuccessResponse("Upload aborted: " + fileName);
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Start a Resumable Upload Session")
+    @PostMapping("/upload/sessions")
+    public ResponseEntity<UploadSessionResponse> createUploadSession(
+            @RequestParam @NotBlank(message = "Username is required") String userName,
+            @RequestParam @NotBlank(message = "Filename is required") String fileName,
+            @RequestParam long fileSize,
+            @RequestParam(required = false) String contentType) {
+
+        rateLimiter.acquire(userName, RateLimiter.Operation.UPLOAD_BYTES, fileSize);
+        UploadSessionResponse response = resumableUploadService.createSession(userName, fileName, fileSize, contentType);
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Upload a Chunk of a Resumable Upload")
+    @PutMapping(value = "/upload/sessions/{sessionId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<UploadSessionResponse> uploadChunk(
+            @PathVariable String sessionId,
+            @RequestParam long offset,
+            @RequestBody byte[] chunk) {
+
+        UploadSessionResponse response = resumableUploadService.uploadChunk(sessionId, offset, chunk);
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Get Received Ranges of a Resumable Upload")
+    @GetMapping("/upload/sessions/{sessionId}")
+    public ResponseEntity<UploadSessionResponse> getUploadSession(@PathVariable String sessionId) {
+        UploadSessionResponse response = resumableUploadService.getSession(sessionId);
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Commit a Resumable Upload")
+    @PostMapping("/upload/sessions/{sessionId}/commit")
+    public ResponseEntity<FileMetadataResponse> commitUploadSession(@PathVariable String sessionId) {
+        FileMetadataResponse response = resumableUploadService.commit(sessionId);
+        return ResponseEntity.ok(response);
+    }
+
+    @Operation(summary = "Abort a Resumable Upload")
+    @DeleteMapping("/upload/sessions/{sessionId}")
+    public ResponseEntity<ApiSuccessResponse> abortUploadSession(@PathVariable String sessionId) {
+        resumableUploadService.abort(sessionId);
+        ApiSuccessResponse response = new ApiSuccessResponse("Upload session aborted: " + sessionId);
+        return ResponseEntity.ok(response);
+    }
+
     @Operation(summary = "Get All Files From User Storage")
     @GetMapping("/search/files")
     public ResponseEntity<SearchResponse> listUserFiles(
             @RequestParam @NotBlank(message = "Username is required") String userName,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String direction,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedAfter,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedBefore,
+            @RequestParam(required = false) Long minSize,
+            @RequestParam(required = false) Long maxSize,
+            @RequestParam(required = false) String contentType,
+            WebRequest webRequest) {
         
-        List<FileMetadataResponse> files = storageService.searchFiles(userName, null, page, size);
-        SearchResponse response = SearchResponse.getSearchResponse(files, userName, null);
-        return ResponseEntity.ok(response);
+        rateLimiter.acquire(userName, RateLimiter.Operation.SEARCH);
+        FileSearchFilter filter = FileSearchFilter.builder()
+                .sort(sort)
+                .direction(direction)
+                .modifiedAfter(modifiedAfter)
+                .modifiedBefore(modifiedBefore)
+                .minSize(minSize)
+                .maxSize(maxSize)
+                .contentType(contentType)
+                .build();
+        SearchPage result = storageService.findFiles(userName, null, filter, page, size);
+        return searchResponse(result, userName, null, webRequest);
+    }
+
+    /**
+     * Answers 304 when the client's If-None-Match still matches the page, before any URL
+     * is presigned or anything is serialized.
+     */
+    private ResponseEntity<SearchResponse> searchResponse(SearchPage result, String userName, String searchTerm,
+                                                          WebRequest webRequest) {
+        if (webRequest.checkNotModified(result.getETag())) {
+            return null;
+        }
+        List<FileMetadataResponse> files = storageService.withDownloadUrls(result.getFiles());
+        SearchResponse response = SearchResponse.getSearchResponse(files, userName, searchTerm);
+        return ResponseEntity.ok()
+                .eTag(result.getETag())
+                .body(response);
+    }
+
+    @Operation(summary = "Stream All User Files as NDJSON")
+    @GetMapping(value = "/search/files/stream", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamUserFiles(
+            @RequestParam @NotBlank(message = "Username is required") String userName,
+            @RequestParam(required = false) String searchTerm,
+            @RequestParam(defaultValue = "false") boolean withDownloadUrls,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedAfter,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant modifiedBefore,
+            @RequestParam(required = false) Long minSize,
+            @RequestParam(required = false) Long maxSize,
+            @RequestParam(required = false) String contentType) {
+
+        rateLimiter.acquire(userName, RateLimiter.Operation.SEARCH);
+        FileSearchFilter filter = FileSearchFilter.builder()
+                .modifiedAfter(modifiedAfter)
+                .modifiedBefore(modifiedBefore)
+                .minSize(minSize)
+                .maxSize(maxSize)
+                .contentType(contentType)
+                .build();
+        FileListing listing = storageService.streamFiles(userName, searchTerm, filter, withDownloadUrls);
+
+        StreamingResponseBody body = outputStream -> {
+            SequenceWriter writer = objectMapper.writer()
+                    .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .withRootValueSeparator("\n")
+                    .writeValues(outputStream);
+            AtomicBoolean written = new AtomicBoolean();
+            listing.forEachPage(page -> {
+                try {
+                    writer.writeAll(page);
+                    writer.flush();
+                    written.set(true);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // The separator only goes between records, so terminate the last line here
+            if (written.get()) {
+                outputStream.write('\n');
+            }
+            writer.close();
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(body);
+    }
+
+    @Operation(summary = "Download a File")
+    @GetMapping("/download/{fileName}")
+    public ResponseEntity<Resource> downloadFile(
+            @PathVariable String fileName,
+            @RequestParam @NotBlank(message = "Username is required") String userName) {
+
+        FileDownload download = storageService.openDownload(userName, fileName);
+        if (download.getRedirectUrl() != null) {
+            return ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(download.getRedirectUrl()))
+                    .build();
+        }
+
+        MediaType contentType = download.getContentType() != null
+                ? MediaType.parseMediaType(download.getContentType())
+                : MediaType.APPLICATION_OCTET_STREAM;
+        ContentDisposition disposition = ContentDisposition.attachment()
+                .filename(download.getFileName(), StandardCharsets.UTF_8)
+                .build();
+
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .contentLength(download.getFileSize())
+                .header(HttpHeaders.CONTENT_DISPOSITION, disposition.toString())
+                .body(new InputStreamResource(download.getContent()));
     }
 
     @Operation(summary = "Delete File By Name")
@@ -64,11 +339,30 @@ public class StorageController {
             @RequestParam @NotBlank(message = "Username is required") String userName,
             @RequestParam @NotBlank(message = "Filename is required") String fileName) {
         
+        rateLimiter.acquire(userName, RateLimiter.Operation.DELETE);
         storageService.deleteFile(userName, fileName);
         ApiSuccessResponse response = new ApiSuccessResponse("File deleted successfully: " + fileName);
         return ResponseEntity.ok(response);
     }
 
+    @Operation(summary = "Get Storage Usage For A User")
+    @GetMapping("/usage")
+    public ResponseEntity<UsageResponse> getUsage(
+            @RequestParam @NotBlank(message = "Username is required") String userName) {
+
+        return ResponseEntity.ok(usageTracker.getUsage(userName));
+    }
+
+    @Operation(summary = "Migrate User Files To Sharded Keys")
+    @PostMapping("/migrate-keys")
+    public ResponseEntity<ApiSuccessResponse> migrateKeys(
+            @RequestParam @NotBlank(message = "Username is required") String userName) {
+
+        int migrated = fileKeyMigrationService.migrateUser(userName);
+        ApiSuccessResponse response = new ApiSuccessResponse("Migrated " + migrated + " files for user " + userName);
+        return ResponseEntity.ok(response);
+    }
+
     @Operation(summary = "Health Check")
     @GetMapping("/health")
     public ResponseEntity<ApiSuccessResponse> healthCheck() {
@@ -0,0 +1,87 @@
+package ai.freightfox.doc.storage.service.demo.controller;
+
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.RateLimitExceededException;
+import ai.freightfox.doc.storage.service.demo.service.RateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Charges {@code POST /upload} to the user's upload byte budget from its
+ * {@code Content-Length}, before the multipart body is read. Spring parses and buffers
+ * the parts before any controller or interceptor runs, so an over-budget upload would
+ * otherwise be received in full only to be rejected.
+ *
+ * <p>The user is read from the query string, since finding a form field would mean reading
+ * the body; an upload without {@code userName} there is rejected with 400. The declared
+ * length includes the multipart framing, so it is slightly above the file size. Requests
+ * without one (chunked transfer) are charged by the controller instead, after the body has
+ * been read. Rejections go through the usual exception handlers.
+ */
+@Component
+public class UploadRateLimitFilter extends OncePerRequestFilter {
+
+    /**
+     * Request attribute set once the upload has been charged here.
+     */
+    public static final String CHARGED_ATTRIBUTE = "ai.freightfox.doc.storage.uploadBytesCharged";
+
+    private static final String UPLOAD_PATH = "/api/freight-fox/s3-bucket/upload";
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    @Qualifier("handlerExceptionResolver")
+    private HandlerExceptionResolver handlerExceptionResolver;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod())
+                || !request.getRequestURI().substring(request.getContextPath().length()).equals(UPLOAD_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long contentLength = request.getContentLengthLong();
+        // request.getParameter would parse the multipart body, so only the query string is read
+        String userName = queryParameter(request, "userName");
+        if (userName == null || userName.isBlank()) {
+            handlerExceptionResolver.resolveException(request, response, null,
+                    new BadRequestException("userName must be passed in the query string of an upload"));
+            return;
+        }
+        if (contentLength > 0) {
+            try {
+                rateLimiter.acquire(userName, RateLimiter.Operation.UPLOAD_BYTES, contentLength);
+            } catch (RateLimitExceededException e) {
+                handlerExceptionResolver.resolveException(request, response, null, e);
+                return;
+            }
+            request.setAttribute(CHARGED_ATTRIBUTE, Boolean.TRUE);
+        }
+        chain.doFilter(request, response);
+    }
+
+    private static String queryParameter(HttpServletRequest request, String name) {
+        if (request.getQueryString() == null) {
+            return null;
+        }
+        String value = UriComponentsBuilder.newInstance().query(request.getQueryString()).build()
+                .getQueryParams().getFirst(name);
+        return value != null ? UriUtils.decode(value, StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,26 @@
+package ai.freightfox.doc.storage.service.demo.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompleteUploadRequest {
+    @NotBlank(message = "Username is required")
+    private String userName;
+
+    @NotBlank(message = "Filename is required")
+    private String fileName;
+
+    // Only set for multipart uploads
+    private String uploadId;
+
+    @Valid
+    private List<CompletedPartRequest> parts;
+}
@@ -0,0 +1,20 @@
+package ai.freightfox.doc.storage.service.demo.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompletedPartRequest {
+    @Min(value = 1, message = "Part number must be at least 1")
+    private int partNumber;
+
+    @JsonProperty("eTag")
+    @NotBlank(message = "ETag is required")
+    private String eTag;
+}
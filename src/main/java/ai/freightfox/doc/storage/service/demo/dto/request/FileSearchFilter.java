@@ -0,0 +1,32 @@
+package ai.freightfox.doc.storage.service.demo.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Optional ordering and range filters for a file search. Unset fields do not constrain
+ * the result; without {@code sort} files come back in listing order.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileSearchFilter {
+    // name, size or lastModified
+    private String sort;
+
+    // asc (default) or desc
+    private String direction;
+
+    private Instant modifiedAfter;
+    private Instant modifiedBefore;
+    private Long minSize;
+    private Long maxSize;
+
+    // Exact type or a wildcard such as image/*
+    private String contentType;
+}
@@ -14,5 +14,6 @@ public class FileMetadataResponse {
     private String fileKey;
     private Long fileSize;
     private Instant lastModified;
+    private String contentType;
     private String downloadUrl;
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package ai.freightfox.doc.storage.service.demo.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class PresignedPartResponse {
+    private int partNumber;
+    private long partSize;
+    private String uploadUrl;
+}
@@ -0,0 +1,20 @@
+package ai.freightfox.doc.storage.service.demo.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class PresignedUploadResponse {
+    private String fileName;
+    private String fileKey;
+    private String uploadId;
+    private String uploadUrl;
+    private List<PresignedPartResponse> partUrls;
+    private Instant expiresAt;
+}
@@ -0,0 +1,24 @@
+package ai.freightfox.doc.storage.service.demo.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class UploadSessionResponse {
+    private String sessionId;
+    private String fileName;
+    private String fileKey;
+    private long fileSize;
+    private long chunkSize;
+    private int totalChunks;
+    private long receivedBytes;
+    private List<ByteRangeResponse> receivedRanges;
+    private List<Long> missingOffsets;
+    private Instant expiresAt;
+}
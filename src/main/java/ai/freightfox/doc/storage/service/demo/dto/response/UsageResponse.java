@@ -0,0 +1,20 @@
+package ai.freightfox.doc.storage.service.demo.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class UsageResponse {
+    private String userName;
+    private long totalBytes;
+    private long fileCount;
+    // 0 when unlimited
+    private long quotaBytes;
+    private long quotaFiles;
+    private Instant lastReconciledAt;
+}
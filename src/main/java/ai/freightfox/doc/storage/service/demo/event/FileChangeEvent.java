@@ -0,0 +1,41 @@
+package ai.freightfox.doc.storage.service.demo.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Published whenever this instance creates, replaces or removes an object in the bucket,
+ * and re-published by {@link FileChangeRelay} for changes made elsewhere. Locally raised
+ * events have no {@code origin}; relayed ones carry the instance or source they came from.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileChangeEvent {
+
+    public enum Type {
+        UPSERT,
+        DELETE
+    }
+
+    private Type type;
+    private String fileKey;
+    private Long fileSize;
+    private Instant lastModified;
+    private String contentType;
+    private String eTag;
+    private String origin;
+
+    public static FileChangeEvent deleted(String fileKey) {
+        return FileChangeEvent.builder()
+                .type(Type.DELETE)
+                .fileKey(fileKey)
+                .lastModified(Instant.now())
+                .build();
+    }
+}
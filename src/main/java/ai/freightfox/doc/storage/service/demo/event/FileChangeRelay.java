@@ -0,0 +1,115 @@
+package ai.freightfox.doc.storage.service.demo.event;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bridges local {@link FileChangeEvent}s and the shared {@link FileChangeStream}: changes
+ * made here are published to the stream, and changes other instances made are polled
+ * every {@code app.events.poll-interval-ms} and re-published locally. Three listeners
+ * hold state that other instances' writes make stale, and each applies relayed events:
+ * the metadata catalog updates its entries, the small-file packer drops a user's cached
+ * pack index, and the usage tracker marks the user's counters for a recount. Without a
+ * configured stream this does nothing.
+ *
+ * <p>Polling runs on a thread of its own, since a long-polling stream such as SQS would
+ * otherwise hold a shared scheduler thread for every wait. The age of each relayed event
+ * is recorded as {@code file.change.events.lag}.
+ */
+@Component
+@Slf4j
+public class FileChangeRelay {
+
+    @Autowired(required = false)
+    private FileChangeStream fileChangeStream;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.events.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    private ScheduledExecutorService pollExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (fileChangeStream == null) {
+            return;
+        }
+        pollExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-change-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pollExecutor.scheduleWithFixedDelay(this::pollRemoteChanges, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pollExecutor != null) {
+            pollExecutor.shutdownNow();
+        }
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        // Relayed events already carry an origin and must not be echoed back
+        if (fileChangeStream == null || event.getOrigin() != null) {
+            return;
+        }
+        try {
+            fileChangeStream.publish(event);
+        } catch (Exception e) {
+            // Other instances converge on their next catalog sync
+            log.warn("Failed to publish change event for {}: {}", event.getFileKey(), e.getMessage());
+        }
+    }
+
+    public void pollRemoteChanges() {
+        if (fileChangeStream == null) {
+            return;
+        }
+
+        List<FileChangeEvent> events;
+        try {
+            events = fileChangeStream.poll();
+        } catch (Exception e) {
+            log.warn("Failed to poll change events: {}", e.getMessage());
+            return;
+        }
+
+        Instant now = Instant.now();
+        for (FileChangeEvent event : events) {
+            try {
+                eventPublisher.publishEvent(event);
+            } catch (Exception e) {
+                // A failing listener must not stop the poller thread or the rest of the batch
+                log.warn("Failed to apply change event for {}: {}", event.getFileKey(), e.getMessage());
+            }
+            if (meterRegistry != null && event.getLastModified() != null) {
+                meterRegistry.timer("file.change.events.lag")
+                        .record(Duration.between(event.getLastModified(), now));
+            }
+        }
+        if (!events.isEmpty()) {
+            log.debug("Applied {} remote change events", events.size());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ai.freightfox.doc.storage.service.demo.event;
+
+import java.util.List;
+
+/**
+ * Change feed shared by every instance of the service. Selected with
+ * {@code app.events.stream}; {@link FileChangeRelay} publishes local changes to it and
+ * replays what the other instances wrote.
+ */
+public interface FileChangeStream {
+
+    /**
+     * Makes a change made by this instance visible to the others.
+     */
+    void publish(FileChangeEvent event);
+
+    /**
+     * Returns changes made elsewhere since the previous poll, oldest first. Every returned
+     * event has its {@code origin} set.
+     */
+    List<FileChangeEvent> poll();
+}
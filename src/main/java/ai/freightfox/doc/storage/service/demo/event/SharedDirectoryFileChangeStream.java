@@ -0,0 +1,197 @@
+package ai.freightfox.doc.storage.service.demo.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Change feed kept as JSON-lines segment files in a directory every instance can reach
+ * (a shared volume, or a local directory in tests). Each instance appends only to its own
+ * {@code <instanceId>-<segment>.events} file and tails everyone else's from the offset it
+ * last read, so no two writers ever share a file.
+ *
+ * <p>Segments roll over at {@code max-segment-bytes} and are deleted by their writer once
+ * older than {@code retention-ms}. An instance starts reading existing segments at their
+ * current end; anything it missed while down is picked up by the catalog's S3 sync.
+ */
+@Component
+@ConditionalOnProperty(name = "app.events.stream", havingValue = "file")
+@Slf4j
+public class SharedDirectoryFileChangeStream implements FileChangeStream {
+
+    private static final String SUFFIX = ".events";
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.events.file.dir:${app.data.dir:${user.home}/.ffox-doc-storage}/change-events}")
+    private String streamDir;
+
+    @Value("${app.events.instance-id:}")
+    private String instanceId;
+
+    @Value("${app.events.file.max-segment-bytes:16777216}")
+    private long maxSegmentBytes;
+
+    @Value("${app.events.file.retention-ms:3600000}")
+    private long retentionMs;
+
+    // Read position per segment of the other instances
+    private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+    private Path directory;
+    private Path segment;
+    private int segmentNumber;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (instanceId == null || instanceId.isBlank()) {
+            instanceId = UUID.randomUUID().toString();
+        }
+        directory = Paths.get(streamDir);
+        Files.createDirectories(directory);
+        // A restarted instance with a fixed id carries on after its newest segment
+        try (Stream<Path> files = Files.list(directory)) {
+            segmentNumber = files.map(file -> file.getFileName().toString())
+                    .filter(this::isOwnSegment)
+                    .mapToInt(name -> Integer.parseInt(name.substring(instanceId.length() + 1, name.length() - SUFFIX.length())) + 1)
+                    .max()
+                    .orElse(0);
+        }
+        segment = segmentPath(segmentNumber);
+
+        for (Path file : otherSegments()) {
+            offsets.put(file.getFileName().toString(), Files.size(file));
+        }
+        log.info("Change event stream for instance {} using {}", instanceId, directory);
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    @Override
+    public synchronized void publish(FileChangeEvent event) {
+        try {
+            byte[] line = (objectMapper.writeValueAsString(event.toBuilder().origin(instanceId).build()) + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            if (Files.exists(segment) && Files.size(segment) + line.length > maxSegmentBytes) {
+                segment = segmentPath(++segmentNumber);
+                deleteExpiredSegments();
+            }
+            // Readers stop at the last newline, so a record caught half-written is read on the next poll
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to publish change event for " + event.getFileKey(), e);
+        }
+    }
+
+    @Override
+    public synchronized List<FileChangeEvent> poll() {
+        List<FileChangeEvent> events = new ArrayList<>();
+        Set<String> present = new HashSet<>();
+        try {
+            for (Path file : otherSegments()) {
+                String name = file.getFileName().toString();
+                present.add(name);
+                long offset = offsets.getOrDefault(name, 0L);
+                offsets.put(name, readFrom(file, offset, events));
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read change events from {}: {}", directory, e.getMessage());
+        }
+        offsets.keySet().retainAll(present);
+        events.sort(Comparator.comparing(FileChangeEvent::getLastModified, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return events;
+    }
+
+    /**
+     * Reads every complete line after the offset and returns the offset just past the last one.
+     */
+    private long readFrom(Path file, long offset, List<FileChangeEvent> events) throws IOException {
+        byte[] tail;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size <= offset) {
+                return offset;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - offset, Integer.MAX_VALUE));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) <= 0) {
+                    break;
+                }
+            }
+            tail = Arrays.copyOf(buffer.array(), buffer.position());
+        } catch (NoSuchFileException e) {
+            return offset;
+        }
+
+        int start = 0;
+        for (int i = 0; i < tail.length; i++) {
+            if (tail[i] != '\n') {
+                continue;
+            }
+            String line = new String(tail, start, i - start, StandardCharsets.UTF_8);
+            start = i + 1;
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                events.add(objectMapper.readValue(line, FileChangeEvent.class));
+            } catch (IOException e) {
+                log.warn("Skipping unreadable change event in {}", file.getFileName());
+            }
+        }
+        return offset + start;
+    }
+
+    private List<Path> otherSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .filter(file -> !isOwnSegment(file.getFileName().toString()))
+                    .toList();
+        }
+    }
+
+    private void deleteExpiredSegments() throws IOException {
+        Instant cutoff = Instant.now().minus(Duration.ofMillis(retentionMs));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> isOwnSegment(path.getFileName().toString())).toList()) {
+                if (!file.equals(segment) && Files.getLastModifiedTime(file).toInstant().isBefore(cutoff)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private boolean isOwnSegment(String name) {
+        return name.startsWith(instanceId + "-") && name.endsWith(SUFFIX)
+                && name.substring(instanceId.length() + 1, name.length() - SUFFIX.length()).matches("\\d{6}");
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(instanceId + "-" + String.format("%06d", number) + SUFFIX);
+    }
+}
@@ -0,0 +1,124 @@
+package ai.freightfox.doc.storage.service.demo.event;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Change feed fed by the bucket's own S3 event notifications, delivered to an SQS queue.
+ * Every instance needs a queue of its own (for example one SQS subscription per instance
+ * on an SNS topic the bucket notifies), since a message is consumed by one reader only.
+ *
+ * <p>S3 emits the notifications itself, so {@link #publish} has nothing to do. An
+ * instance also receives notifications for its own writes; applying them again is
+ * harmless.
+ */
+@Component
+@ConditionalOnProperty(name = "app.events.stream", havingValue = "sqs")
+@Slf4j
+public class SqsFileChangeStream implements FileChangeStream {
+
+    static final String ORIGIN = "s3";
+
+    @Autowired
+    private SqsClient sqsClient;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.events.sqs.queue-url}")
+    private String queueUrl;
+
+    @Value("${app.events.sqs.wait-seconds:1}")
+    private int waitSeconds;
+
+    @Override
+    public void publish(FileChangeEvent event) {
+        // S3 notifies the queue directly
+    }
+
+    @Override
+    public List<FileChangeEvent> poll() {
+        ReceiveMessageRequest receiveRequest = ReceiveMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .maxNumberOfMessages(10)
+                .waitTimeSeconds(waitSeconds)
+                .build();
+        List<Message> messages = sqsClient.receiveMessage(receiveRequest).messages();
+        if (messages.isEmpty()) {
+            return List.of();
+        }
+
+        List<FileChangeEvent> events = new ArrayList<>();
+        List<DeleteMessageBatchRequestEntry> processed = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            try {
+                events.addAll(parseNotification(message.body()));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Dropping unreadable S3 notification {}: {}", message.messageId(), e.getMessage());
+            }
+            processed.add(DeleteMessageBatchRequestEntry.builder()
+                    .id(message.messageId())
+                    .receiptHandle(message.receiptHandle())
+                    .build());
+        }
+
+        sqsClient.deleteMessageBatch(DeleteMessageBatchRequest.builder()
+                .queueUrl(queueUrl)
+                .entries(processed)
+                .build());
+        return events;
+    }
+
+    /**
+     * Turns one S3 notification (optionally wrapped in an SNS envelope) into change events.
+     */
+    List<FileChangeEvent> parseNotification(String body) throws IOException {
+        JsonNode root = objectMapper.readTree(body);
+        if (root.hasNonNull("Message") && "Notification".equals(root.path("Type").asText())) {
+            root = objectMapper.readTree(root.get("Message").asText());
+        }
+
+        List<FileChangeEvent> events = new ArrayList<>();
+        // Test events sent when notifications are configured carry no Records
+        for (JsonNode record : root.path("Records")) {
+            String eventName = record.path("eventName").asText();
+            JsonNode object = record.path("s3").path("object");
+            String key = URLDecoder.decode(object.path("key").asText(), StandardCharsets.UTF_8);
+            Instant eventTime = record.hasNonNull("eventTime") ? Instant.parse(record.get("eventTime").asText()) : Instant.now();
+
+            if (eventName.startsWith("ObjectCreated:")) {
+                events.add(FileChangeEvent.builder()
+                        .type(FileChangeEvent.Type.UPSERT)
+                        .fileKey(key)
+                        .fileSize(object.path("size").asLong())
+                        .lastModified(eventTime)
+                        .eTag(object.hasNonNull("eTag") ? "\"" + object.get("eTag").asText() + "\"" : null)
+                        .origin(ORIGIN)
+                        .build());
+            } else if (eventName.startsWith("ObjectRemoved:")) {
+                events.add(FileChangeEvent.deleted(key).toBuilder()
+                        .lastModified(eventTime)
+                        .origin(ORIGIN)
+                        .build());
+            }
+        }
+        return events;
+    }
+}
@@ -4,14 +4,20 @@ import ai.freightfox.doc.storage.service.demo.dto.response.ApiErrorResponse;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileSearchException;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileUploadException;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.QuotaExceededException;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.RateLimitExceededException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.ConstraintViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
+import java.time.Instant;
+
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
@@ -29,6 +35,36 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(apiErrorResponse, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<ApiErrorResponse> handleQuotaExceeded(
+            QuotaExceededException ex,
+            HttpServletRequest request) {
+
+        ApiErrorResponse apiErrorResponse = new ApiErrorResponse(
+                HttpStatus.FORBIDDEN.value(),
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+
+        return new ResponseEntity<>(apiErrorResponse, HttpStatus.FORBIDDEN);
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<ApiErrorResponse> handleRateLimitExceeded(
+            RateLimitExceededException ex,
+            HttpServletRequest request) {
+
+        ApiErrorResponse apiErrorResponse = new ApiErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                ex.getMessage(),
+                request.getRequestURI()
+        );
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(apiErrorResponse);
+    }
+
     @ExceptionHandler(FileUploadException.class)
     public ResponseEntity<ApiErrorResponse> handleFileUpload(
             FileUploadException ex,
@@ -90,12 +126,31 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(apiErrorResponse, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(MethodArgumentNotValidException.class)
+    public ResponseEntity<ApiErrorResponse> handleInvalidRequestBody(
+            MethodArgumentNotValidException ex,
+            HttpServletRequest request) {
+
+        String message = ex.getBindingResult().getAllErrors().isEmpty()
+                ? "Invalid request body"
+                : ex.getBindingResult().getAllErrors().get(0).getDefaultMessage();
+
+        ApiErrorResponse apiErrorResponse = new ApiErrorResponse(
+                HttpStatus.BAD_REQUEST.value(),
+                message,
+                request.getRequestURI()
+        );
+
+        return new ResponseEntity<>(apiErrorResponse, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(MethodArgumentTypeMismatchException.class)
     public ResponseEntity<ApiErrorResponse> handleTypeMismatch(
             MethodArgumentTypeMismatchException ex,
             HttpServletRequest request) {
 
-        String message = String.format("Invalid parameter '%s': must be a valid number", ex.getName());
+        String expected = ex.getRequiredType() == Instant.class ? "an ISO-8601 timestamp" : "a valid number";
+        String message = String.format("Invalid parameter '%s': must be %s", ex.getName(), expected);
 
         ApiErrorResponse apiErrorResponse = new ApiErrorResponse(
                 HttpStatus.BAD_REQUEST.value(),
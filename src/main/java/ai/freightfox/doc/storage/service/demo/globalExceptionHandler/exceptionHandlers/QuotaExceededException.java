@@ -0,0 +1,7 @@
+package ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers;
+
+public class QuotaExceededException extends RuntimeException {
+    public QuotaExceededException(String message) {
+        super(message);
+    }
+}
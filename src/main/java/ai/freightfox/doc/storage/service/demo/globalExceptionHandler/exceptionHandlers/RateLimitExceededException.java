@@ -0,0 +1,13 @@
+package ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers;
+
+import lombok.Getter;
+
+@Getter
+public class RateLimitExceededException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public RateLimitExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
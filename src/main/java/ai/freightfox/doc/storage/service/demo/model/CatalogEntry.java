@@ -0,0 +1,22 @@
+package ai.freightfox.doc.storage.service.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class CatalogEntry {
+    private String userName;
+    private String fileName;
+    private String fileKey;
+    private long fileSize;
+    private Instant lastModified;
+    private String contentType;
+    private String eTag;
+}
@@ -0,0 +1,21 @@
+package ai.freightfox.doc.storage.service.demo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.io.InputStream;
+
+/**
+ * Either the file content served by this instance, or a presigned URL to redirect to.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+public class FileDownload {
+    private String fileName;
+    private String contentType;
+    private Long fileSize;
+    private InputStream content;
+    private String redirectUrl;
+}
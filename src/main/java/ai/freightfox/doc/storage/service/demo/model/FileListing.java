@@ -0,0 +1,15 @@
+package ai.freightfox.doc.storage.service.demo.model;
+
+import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A user's listing that is produced page by page as S3 returns it, for streaming
+ * responses. Nothing is listed until {@link #forEachPage} is called.
+ */
+@FunctionalInterface
+public interface FileListing {
+    void forEachPage(Consumer<List<FileMetadataResponse>> pageConsumer);
+}
@@ -0,0 +1,22 @@
+package ai.freightfox.doc.storage.service.demo.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A user's sealed packs, stored as one JSON object next to the packs themselves.
+ */
+@Data
+@NoArgsConstructor
+public class PackIndex {
+    // File name -> location of its current bytes
+    private SortedMap<String, PackedFile> files = new TreeMap<>();
+
+    // Pack key -> total bytes written to it, live or not
+    private Map<String, Long> packSizes = new HashMap<>();
+}
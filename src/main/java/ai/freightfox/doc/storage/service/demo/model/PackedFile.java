@@ -0,0 +1,30 @@
+package ai.freightfox.doc.storage.service.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Where a small file lives inside a pack object: bytes {@code [offset, offset + length)}.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class PackedFile {
+    private String userName;
+    private String fileName;
+    private String packKey;
+    private long offset;
+    private long length;
+    private String contentType;
+    private Instant lastModified;
+
+    // Only written to an open pack's journal, to record a delete
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean deleted;
+}
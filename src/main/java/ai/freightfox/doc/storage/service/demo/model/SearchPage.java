@@ -0,0 +1,20 @@
+package ai.freightfox.doc.storage.service.demo.model;
+
+import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of search results before presigned download URLs are added, together with
+ * the weak ETag identifying it.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+public class SearchPage {
+    private List<FileMetadataResponse> files;
+    private String eTag;
+}
@@ -0,0 +1,27 @@
+package ai.freightfox.doc.storage.service.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+public class SpoolEntry {
+    private String id;
+    private String userName;
+    private String fileName;
+    private String fileKey;
+    private String contentType;
+    private long fileSize;
+    private Instant createdAt;
+
+    // Flush bookkeeping, not persisted
+    @JsonIgnore
+    private int attempts;
+    @JsonIgnore
+    private Instant nextAttemptAt;
+    @JsonIgnore
+    private volatile boolean deleted;
+}
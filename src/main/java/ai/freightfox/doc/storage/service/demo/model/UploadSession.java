@@ -0,0 +1,36 @@
+package ai.freightfox.doc.storage.service.demo.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+@Data
+@NoArgsConstructor
+public class UploadSession {
+    private String sessionId;
+    private String userName;
+    private String fileName;
+    private String fileKey;
+    private String contentType;
+    private String uploadId;
+    private long fileSize;
+    private long chunkSize;
+    private Instant createdAt;
+    private Instant expiresAt;
+    // Kept after a successful commit so a retried commit gets the same answer
+    private boolean committed;
+
+    // S3 part number -> ETag of every chunk received so far
+    private SortedMap<Integer, String> partETags = new TreeMap<>();
+
+    public int totalChunks() {
+        return (int) ((fileSize + chunkSize - 1) / chunkSize);
+    }
+
+    public boolean isExpired(Instant now) {
+        return expiresAt != null && now.isAfter(expiresAt);
+    }
+}
@@ -0,0 +1,153 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Decides where a user's file lives in the bucket. With {@code app.s3.key-layout.shards=0}
+ * keys stay {@code userName/fileName}; otherwise they become {@code shard/userName/fileName}
+ * so one tenant is spread across several S3 prefixes and their request-rate limits.
+ */
+@Component
+@Slf4j
+public class FileKeyLayout {
+
+    private static final int MAX_SHARDS = 256;
+
+    @Value("${app.s3.key-layout.shards:0}")
+    private int shards;
+
+    @Value("${app.s3.key-layout.include-legacy:true}")
+    private boolean includeLegacy;
+
+    @PostConstruct
+    public void init() {
+        if (shards < 0 || shards > MAX_SHARDS) {
+            throw new IllegalStateException("app.s3.key-layout.shards must be between 0 and " + MAX_SHARDS);
+        }
+        if (isSharded()) {
+            log.info("Using sharded key layout with {} shards (legacy keys visible: {})", shards, includeLegacy);
+        }
+    }
+
+    public boolean isSharded() {
+        return shards > 0;
+    }
+
+    public String buildFileKey(String userName, String fileName) {
+        if (!isSharded()) {
+            return legacyKey(userName, fileName);
+        }
+        return shardLabel(shardOf(userName, fileName)) + "/" + userName + "/" + fileName;
+    }
+
+    public String legacyKey(String userName, String fileName) {
+        return legacyPrefix(userName) + fileName;
+    }
+
+    public String legacyPrefix(String userName) {
+        return userName + "/";
+    }
+
+    /**
+     * Every prefix a user's files may live under. Legacy {@code userName/} is included
+     * while sharding is on so files uploaded before the switch stay visible until migrated.
+     */
+    public List<String> listPrefixes(String userName) {
+        if (!isSharded()) {
+            return List.of(legacyPrefix(userName));
+        }
+        List<String> prefixes = new ArrayList<>(shards + 1);
+        for (int shard = 0; shard < shards; shard++) {
+            prefixes.add(shardLabel(shard) + "/" + userName + "/");
+        }
+        if (includeLegacy) {
+            prefixes.add(legacyPrefix(userName));
+        }
+        return prefixes;
+    }
+
+    public boolean isLegacyFallbackEnabled() {
+        return isSharded() && includeLegacy;
+    }
+
+    /**
+     * The key without its shard segment, i.e. {@code userName/fileName} in either layout.
+     */
+    public String logicalKey(String key) {
+        int start = logicalKeyStart(key);
+        return start == 0 ? key : key.substring(start);
+    }
+
+    /**
+     * Where the logical key begins within the key, for matching without a substring.
+     */
+    public int logicalKeyStart(String key) {
+        if (isSharded() && key.indexOf('/') != key.lastIndexOf('/')) {
+            return key.indexOf('/') + 1;
+        }
+        return 0;
+    }
+
+    public String userName(String key) {
+        String logicalKey = logicalKey(key);
+        return logicalKey.substring(0, logicalKey.indexOf('/'));
+    }
+
+    public String extractFileName(String key) {
+        return key.substring(key.lastIndexOf("/") + 1);
+    }
+
+    /**
+     * Keeps only the newest object of each file name in a listing ordered by file name.
+     * Until a user is migrated the same name can sit at both its legacy and sharded key.
+     */
+    public List<S3Object> newestPerFileName(List<S3Object> listing) {
+        List<S3Object> newest = new ArrayList<>(listing.size());
+        for (S3Object object : listing) {
+            addNewest(newest, object);
+        }
+        return newest;
+    }
+
+    public boolean sameFileName(String leftKey, String rightKey) {
+        int left = leftKey.lastIndexOf('/') + 1;
+        int right = rightKey.lastIndexOf('/') + 1;
+        int length = leftKey.length() - left;
+        return length == rightKey.length() - right && leftKey.regionMatches(left, rightKey, right, length);
+    }
+
+    public static boolean isNewer(S3Object candidate, S3Object current) {
+        return candidate.lastModified() != null
+                && (current.lastModified() == null || candidate.lastModified().isAfter(current.lastModified()));
+    }
+
+    private void addNewest(List<S3Object> listing, S3Object object) {
+        int last = listing.size() - 1;
+        if (last >= 0 && sameFileName(listing.get(last).key(), object.key())) {
+            if (isNewer(object, listing.get(last))) {
+                listing.set(last, object);
+            }
+            return;
+        }
+        listing.add(object);
+    }
+
+    private int shardOf(String userName, String fileName) {
+        CRC32 crc = new CRC32();
+        crc.update((userName + "/" + fileName).getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shards);
+    }
+
+    private String shardLabel(int shard) {
+        return String.format("%02x", shard);
+    }
+}
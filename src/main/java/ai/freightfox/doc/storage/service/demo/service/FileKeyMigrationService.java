@@ -0,0 +1,120 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+/**
+ * Moves a user's legacy {@code userName/fileName} objects to their sharded keys.
+ * Each object is copied before the original is removed, so a crash mid-run leaves
+ * at worst a duplicate that the next run cleans up.
+ */
+@Service
+@Slf4j
+public class FileKeyMigrationService {
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private FileKeyLayout fileKeyLayout;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${aws.s3.bucket.name}")
+    private String s3BucketName;
+
+    public int migrateUser(String userName) {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new BadRequestException("Username cannot be null or empty");
+        }
+        if (!fileKeyLayout.isSharded()) {
+            throw new BadRequestException("Sharded key layout is not enabled");
+        }
+
+        int migrated = 0;
+        String continuationToken = null;
+        do {
+            ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                    .bucket(s3BucketName)
+                    .prefix(fileKeyLayout.legacyPrefix(userName))
+                    .delimiter("/")
+                    .continuationToken(continuationToken)
+                    .build();
+
+            ListObjectsV2Response listResponse = s3Client.listObjectsV2(listRequest);
+            for (S3Object s3Object : listResponse.contents()) {
+                if (s3Object.key().endsWith("/")) {
+                    continue;
+                }
+                migrateObject(userName, s3Object);
+                migrated++;
+            }
+            continuationToken = listResponse.isTruncated() ? listResponse.nextContinuationToken() : null;
+        } while (continuationToken != null);
+
+        log.info("Migrated {} files for user {} to the sharded key layout", migrated, userName);
+        return migrated;
+    }
+
+    private void migrateObject(String userName, S3Object legacyObject) {
+        String legacyKey = legacyObject.key();
+        String targetKey = fileKeyLayout.buildFileKey(userName, fileKeyLayout.extractFileName(legacyKey));
+
+        // A newer upload already at the sharded key wins; only the stale legacy copy goes
+        HeadObjectResponse target = headIfExists(targetKey);
+        if (target != null && target.lastModified() != null && legacyObject.lastModified() != null
+                && !target.lastModified().isBefore(legacyObject.lastModified())) {
+            deleteLegacy(legacyKey);
+            log.debug("Kept newer {} and removed legacy {}", targetKey, legacyKey);
+            return;
+        }
+
+        CopyObjectRequest copyRequest = CopyObjectRequest.builder()
+                .sourceBucket(s3BucketName)
+                .sourceKey(legacyKey)
+                .destinationBucket(s3BucketName)
+                .destinationKey(targetKey)
+                .build();
+        CopyObjectResponse copyResponse = s3Client.copyObject(copyRequest);
+
+        CopyObjectResult copyResult = copyResponse != null ? copyResponse.copyObjectResult() : null;
+        eventPublisher.publishEvent(FileChangeEvent.builder()
+                .type(FileChangeEvent.Type.UPSERT)
+                .fileKey(targetKey)
+                .fileSize(legacyObject.size())
+                .lastModified(copyResult != null ? copyResult.lastModified() : null)
+                .eTag(copyResult != null ? copyResult.eTag() : legacyObject.eTag())
+                .build());
+        deleteLegacy(legacyKey);
+
+        log.debug("Migrated {} to {}", legacyKey, targetKey);
+    }
+
+    private void deleteLegacy(String legacyKey) {
+        DeleteObjectRequest deleteRequest = DeleteObjectRequest.builder()
+                .bucket(s3BucketName)
+                .key(legacyKey)
+                .build();
+        s3Client.deleteObject(deleteRequest);
+        eventPublisher.publishEvent(FileChangeEvent.deleted(legacyKey));
+    }
+
+    private HeadObjectResponse headIfExists(String key) {
+        try {
+            return s3Client.headObject(HeadObjectRequest.builder()
+                    .bucket(s3BucketName)
+                    .key(key)
+                    .build());
+        } catch (NoSuchKeyException e) {
+            return null;
+        }
+    }
+}
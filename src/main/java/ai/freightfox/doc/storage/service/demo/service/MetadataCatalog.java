@@ -0,0 +1,549 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
+import ai.freightfox.doc.storage.service.demo.model.CatalogEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local on-disk catalog of object metadata (key, size, lastModified, content type, ETag) so
+ * a restarted instance can answer searches without listing S3.
+ *
+ * <p>Changes are appended to {@code catalog.log}; the log is folded into
+ * {@code catalog.snapshot.json} after every sync run or once it grows past
+ * {@code compact-after-records}. A user's listing is only served from the catalog once it
+ * is known to be complete for that user: either a search listed the user's prefixes in
+ * full, or a background sync has walked the whole bucket.
+ *
+ * <p>The background sync lists {@code pages-per-run} pages per run, resuming from a
+ * persisted cursor, and reconciles the key range each page covers.
+ *
+ * <p>A listing can be overtaken by change events for the keys it covers. Every change
+ * event bumps a catalog version and stamps it on the key; reconciling a listing leaves
+ * alone any key stamped after the listing started, so an upload or delete made while the
+ * listing was in flight is not undone by it.
+ */
+@Component
+@Slf4j
+public class MetadataCatalog {
+
+    private static final String SNAPSHOT_FILE = "catalog.snapshot.json";
+    private static final String LOG_FILE = "catalog.log";
+    // Listings running longer than this may undo a change made while they ran
+    private static final Duration CHANGE_STAMP_RETENTION = Duration.ofMinutes(10);
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private FileKeyLayout fileKeyLayout;
+
+    @Autowired
+    private SmallFilePacker smallFilePacker;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.catalog.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.catalog.dir:${app.data.dir:${user.home}/.ffox-doc-storage}/catalog}")
+    private String catalogDir;
+
+    @Value("${app.catalog.sync.pages-per-run:10}")
+    private int pagesPerRun;
+
+    @Value("${app.catalog.compact-after-records:10000}")
+    private int compactAfterRecords;
+
+    @Value("${aws.s3.bucket.name}")
+    private String s3BucketName;
+
+    private final ConcurrentSkipListMap<String, CatalogEntry> entriesByKey = new ConcurrentSkipListMap<>();
+    private final Map<String, ConcurrentSkipListMap<String, CatalogEntry>> entriesByUser = new ConcurrentHashMap<>();
+    private final Set<String> syncedUsers = ConcurrentHashMap.newKeySet();
+    private volatile boolean fullSyncCompleted;
+    private volatile String syncCursor;
+
+    private final AtomicLong changeVersion = new AtomicLong();
+    // Keys changed by events, with the version of their latest change; guarded by this
+    private final Map<String, ChangeStamp> changeStamps = new HashMap<>();
+    private final Object compactionLock = new Object();
+
+    private Path directory;
+    private BufferedWriter logWriter;
+    private int logRecords;
+    private long logGeneration;
+    private boolean compactionDue;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(catalogDir);
+        Files.createDirectories(directory);
+        load();
+        logWriter = Files.newBufferedWriter(directory.resolve(LOG_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        log.info("Metadata catalog loaded {} entries for {} synced users (full sync: {})",
+                entriesByKey.size(), syncedUsers.size(), fullSyncCompleted);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        compact();
+        synchronized (this) {
+            if (logWriter != null) {
+                logWriter.close();
+                logWriter = null;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The user's objects in file-name order, or {@code null} when the catalog cannot
+     * vouch for the listing being complete and the caller has to ask S3.
+     */
+    public List<S3Object> listUser(String userName) {
+        if (!coversUser(userName)) {
+            return null;
+        }
+        Map<String, CatalogEntry> entries = entriesByUser.getOrDefault(userName, new ConcurrentSkipListMap<>());
+        return entries.values().stream()
+                .sorted(Comparator.comparing(CatalogEntry::getFileName).thenComparing(CatalogEntry::getFileKey))
+                .map(entry -> S3Object.builder()
+                        .key(entry.getFileKey())
+                        .size(entry.getFileSize())
+                        .lastModified(entry.getLastModified())
+                        .eTag(entry.getETag())
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Whether the catalog holds every object of the user, so a key it does not know
+     * does not exist.
+     */
+    public boolean coversUser(String userName) {
+        return enabled && (fullSyncCompleted || syncedUsers.contains(userName));
+    }
+
+    public CatalogEntry find(String fileKey) {
+        return enabled ? entriesByKey.get(fileKey) : null;
+    }
+
+    /**
+     * The version to pass to {@link #recordUserListing} for a listing about to start.
+     */
+    public long currentVersion() {
+        return changeVersion.get();
+    }
+
+    /**
+     * Replaces everything known about the user with a complete listing taken from S3.
+     * Keys changed by events after {@code listedSince} (from {@link #currentVersion()}
+     * before the listing started) keep what the events said.
+     */
+    public void recordUserListing(String userName, List<S3Object> objects, long listedSince) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            Set<String> listedKeys = new HashSet<>();
+            for (S3Object object : objects) {
+                if (isCatalogued(object.key())) {
+                    listedKeys.add(object.key());
+                    if (!changedSince(object.key(), listedSince)) {
+                        put(fromListing(object));
+                    }
+                }
+            }
+            for (String key : List.copyOf(entriesByUser.getOrDefault(userName, new ConcurrentSkipListMap<>()).keySet())) {
+                if (!listedKeys.contains(key) && !changedSince(key, listedSince)) {
+                    delete(key);
+                }
+            }
+            syncedUsers.add(userName);
+            append(LogRecord.userSynced(userName));
+        }
+        compactIfDue();
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        if (!enabled || !isCatalogued(event.getFileKey())) {
+            return;
+        }
+        synchronized (this) {
+            applyChange(event);
+        }
+        compactIfDue();
+    }
+
+    // Callers hold this object's monitor
+    private void applyChange(FileChangeEvent event) {
+        CatalogEntry previous = entriesByKey.get(event.getFileKey());
+        // A relayed event can arrive after a newer local change to the same key
+        if (event.getOrigin() != null && previous != null && event.getLastModified() != null
+                && previous.getLastModified() != null && event.getLastModified().isBefore(previous.getLastModified())) {
+            return;
+        }
+        changeStamps.put(event.getFileKey(), new ChangeStamp(changeVersion.incrementAndGet(), Instant.now()));
+        if (event.getType() == FileChangeEvent.Type.DELETE) {
+            delete(event.getFileKey());
+            return;
+        }
+
+        put(CatalogEntry.builder()
+                .userName(fileKeyLayout.userName(event.getFileKey()))
+                .fileName(fileKeyLayout.extractFileName(event.getFileKey()))
+                .fileKey(event.getFileKey())
+                .fileSize(event.getFileSize() != null ? event.getFileSize() : 0L)
+                .lastModified(event.getLastModified() != null ? event.getLastModified() : Instant.now())
+                .contentType(event.getContentType() != null || previous == null ? event.getContentType() : previous.getContentType())
+                .eTag(event.getETag())
+                .build());
+    }
+
+    @Scheduled(fixedDelayString = "${app.catalog.sync.interval-ms:60000}")
+    public void syncFromS3() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (int page = 0; page < pagesPerRun; page++) {
+                if (!syncPage()) {
+                    break;
+                }
+            }
+            compact();
+        } catch (Exception e) {
+            log.warn("Metadata catalog sync failed, will resume from {}: {}", syncCursor, e.getMessage());
+        }
+    }
+
+    /**
+     * Lists one page after the cursor and reconciles the key range it covers.
+     * Returns false once the end of the bucket has been reached.
+     */
+    private boolean syncPage() {
+        String from = syncCursor;
+        long listedSince = changeVersion.get();
+        ListObjectsV2Request listRequest = ListObjectsV2Request.builder()
+                .bucket(s3BucketName)
+                .startAfter(from)
+                .maxKeys(1000)
+                .build();
+        ListObjectsV2Response listResponse = s3Client.listObjectsV2(listRequest);
+        List<S3Object> objects = listResponse.contents();
+        boolean reachedEnd = !Boolean.TRUE.equals(listResponse.isTruncated()) || objects.isEmpty();
+        String to = objects.isEmpty() ? null : objects.get(objects.size() - 1).key();
+
+        synchronized (this) {
+            Set<String> listedKeys = new HashSet<>();
+            for (S3Object object : objects) {
+                if (!isCatalogued(object.key())) {
+                    continue;
+                }
+                listedKeys.add(object.key());
+                if (changedSince(object.key(), listedSince)) {
+                    continue;
+                }
+                CatalogEntry current = entriesByKey.get(object.key());
+                if (current == null || !Objects.equals(current.getETag(), object.eTag())
+                        || current.getFileSize() != object.size()) {
+                    CatalogEntry synced = fromListing(object);
+                    if (current != null && Objects.equals(current.getETag(), object.eTag())) {
+                        synced.setContentType(current.getContentType());
+                    }
+                    put(synced);
+                }
+            }
+
+            NavigableMap<String, CatalogEntry> range = from == null ? entriesByKey : entriesByKey.tailMap(from, false);
+            if (!reachedEnd) {
+                range = range.headMap(to, true);
+            }
+            for (String key : List.copyOf(range.keySet())) {
+                if (!listedKeys.contains(key) && !changedSince(key, listedSince)) {
+                    delete(key);
+                }
+            }
+
+            syncCursor = reachedEnd ? null : to;
+            if (reachedEnd && !fullSyncCompleted) {
+                fullSyncCompleted = true;
+                log.info("Metadata catalog completed its first full sync with {} entries", entriesByKey.size());
+            }
+        }
+        return !reachedEnd;
+    }
+
+    // Callers hold this object's monitor
+    private boolean changedSince(String key, long version) {
+        ChangeStamp stamp = changeStamps.get(key);
+        return stamp != null && stamp.version() > version;
+    }
+
+    private boolean isCatalogued(String key) {
+        return key != null && !key.endsWith("/") && key.contains("/") && !smallFilePacker.isInternalKey(key);
+    }
+
+    private CatalogEntry fromListing(S3Object object) {
+        CatalogEntry previous = entriesByKey.get(object.key());
+        return CatalogEntry.builder()
+                .userName(fileKeyLayout.userName(object.key()))
+                .fileName(fileKeyLayout.extractFileName(object.key()))
+                .fileKey(object.key())
+                .fileSize(object.size() != null ? object.size() : 0L)
+                .lastModified(object.lastModified())
+                .contentType(previous != null ? previous.getContentType() : null)
+                .eTag(object.eTag())
+                .build();
+    }
+
+    // Callers hold this object's monitor
+    private void put(CatalogEntry entry) {
+        apply(entry);
+        append(LogRecord.put(entry));
+    }
+
+    private void delete(String key) {
+        if (unapply(key)) {
+            append(LogRecord.delete(key));
+        }
+    }
+
+    private void apply(CatalogEntry entry) {
+        CatalogEntry previous = entriesByKey.put(entry.getFileKey(), entry);
+        if (previous != null && !previous.getUserName().equals(entry.getUserName())) {
+            entriesByUser.getOrDefault(previous.getUserName(), new ConcurrentSkipListMap<>()).remove(entry.getFileKey());
+        }
+        entriesByUser.computeIfAbsent(entry.getUserName(), user -> new ConcurrentSkipListMap<>())
+                .put(entry.getFileKey(), entry);
+    }
+
+    private boolean unapply(String key) {
+        CatalogEntry previous = entriesByKey.remove(key);
+        if (previous == null) {
+            return false;
+        }
+        Map<String, CatalogEntry> userEntries = entriesByUser.get(previous.getUserName());
+        if (userEntries != null) {
+            userEntries.remove(key);
+        }
+        return true;
+    }
+
+    private void append(LogRecord record) {
+        if (logWriter == null) {
+            return;
+        }
+        try {
+            logWriter.write(objectMapper.writeValueAsString(record));
+            logWriter.newLine();
+            logWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to metadata catalog log", e);
+        }
+        if (++logRecords >= compactAfterRecords) {
+            compactionDue = true;
+        }
+    }
+
+    private void compactIfDue() {
+        boolean due;
+        synchronized (this) {
+            due = compactionDue;
+        }
+        if (due) {
+            compact();
+        }
+    }
+
+    /**
+     * Folds the log into a new snapshot. The state is copied and the log rotated to
+     * {@code catalog.log.<generation>} under this object's monitor; the snapshot is written
+     * outside it, so searches and change events do not wait on the disk. The snapshot
+     * records the generation it covers, so a rotated log left behind by a crash is either
+     * replayed or, once covered, deleted on the next load.
+     */
+    private void compact() {
+        synchronized (compactionLock) {
+            Snapshot snapshot = new Snapshot();
+            Path rotatedLog;
+            synchronized (this) {
+                if (logWriter == null) {
+                    return;
+                }
+                snapshot.setEntries(List.copyOf(entriesByKey.values()));
+                snapshot.setSyncedUsers(Set.copyOf(syncedUsers));
+                snapshot.setFullSyncCompleted(fullSyncCompleted);
+                snapshot.setSyncCursor(syncCursor);
+                snapshot.setLogGeneration(++logGeneration);
+                rotatedLog = directory.resolve(LOG_FILE + "." + logGeneration);
+                try {
+                    logWriter.close();
+                    Files.move(directory.resolve(LOG_FILE), rotatedLog, StandardCopyOption.ATOMIC_MOVE);
+                    logWriter = Files.newBufferedWriter(directory.resolve(LOG_FILE), StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to rotate metadata catalog log", e);
+                }
+                logRecords = 0;
+                compactionDue = false;
+                Instant expired = Instant.now().minus(CHANGE_STAMP_RETENTION);
+                changeStamps.values().removeIf(stamp -> stamp.changedAt().isBefore(expired));
+            }
+
+            Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), snapshot);
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(rotatedLog);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to compact metadata catalog", e);
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        Path snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotPath)) {
+            Snapshot snapshot = objectMapper.readValue(snapshotPath.toFile(), Snapshot.class);
+            snapshot.getEntries().forEach(this::apply);
+            syncedUsers.addAll(snapshot.getSyncedUsers());
+            fullSyncCompleted = snapshot.isFullSyncCompleted();
+            syncCursor = snapshot.getSyncCursor();
+            logGeneration = snapshot.getLogGeneration();
+        }
+
+        // Logs rotated by a compaction that did not finish, oldest first
+        SortedMap<Long, Path> rotatedLogs = new TreeMap<>();
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(directory, LOG_FILE + ".*")) {
+            for (Path rotated : logs) {
+                String suffix = rotated.getFileName().toString().substring(LOG_FILE.length() + 1);
+                if (suffix.chars().allMatch(Character::isDigit)) {
+                    rotatedLogs.put(Long.parseLong(suffix), rotated);
+                }
+            }
+        }
+        for (Map.Entry<Long, Path> rotated : rotatedLogs.entrySet()) {
+            if (rotated.getKey() <= logGeneration) {
+                Files.deleteIfExists(rotated.getValue());
+            } else {
+                replay(rotated.getValue());
+            }
+        }
+        if (!rotatedLogs.isEmpty()) {
+            logGeneration = Math.max(logGeneration, rotatedLogs.lastKey());
+        }
+
+        Path logPath = directory.resolve(LOG_FILE);
+        if (Files.exists(logPath)) {
+            replay(logPath);
+        }
+    }
+
+    private void replay(Path logPath) throws IOException {
+        for (String line : Files.readAllLines(logPath, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) {
+                continue;
+            }
+            LogRecord record;
+            try {
+                record = objectMapper.readValue(line, LogRecord.class);
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable metadata catalog log line");
+                continue;
+            }
+            switch (record.getOp()) {
+                case PUT -> apply(record.getEntry());
+                case DELETE -> unapply(record.getFileKey());
+                case USER_SYNCED -> syncedUsers.add(record.getUserName());
+            }
+            logRecords++;
+        }
+    }
+
+    @Data
+    @NoArgsConstructor
+    static class Snapshot {
+        private List<CatalogEntry> entries = new ArrayList<>();
+        private Set<String> syncedUsers = new HashSet<>();
+        private boolean fullSyncCompleted;
+        private String syncCursor;
+        // Rotated logs up to this generation are already folded in
+        private long logGeneration;
+    }
+
+    private record ChangeStamp(long version, Instant changedAt) {
+    }
+
+    @Data
+    @NoArgsConstructor
+    static class LogRecord {
+        enum Op { PUT, DELETE, USER_SYNCED }
+
+        private Op op;
+        private CatalogEntry entry;
+        private String fileKey;
+        private String userName;
+
+        static LogRecord put(CatalogEntry entry) {
+            LogRecord record = new LogRecord();
+            record.setOp(Op.PUT);
+            record.setEntry(entry);
+            return record;
+        }
+
+        static LogRecord delete(String fileKey) {
+            LogRecord record = new LogRecord();
+            record.setOp(Op.DELETE);
+            record.setFileKey(fileKey);
+            return record;
+        }
+
+        static LogRecord userSynced(String userName) {
+            LogRecord record = new LogRecord();
+            record.setOp(Op.USER_SYNCED);
+            record.setUserName(userName);
+            return record;
+        }
+    }
+}
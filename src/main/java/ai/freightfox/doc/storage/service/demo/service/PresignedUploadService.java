@@ -0,0 +1,238 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.dto.request.CompleteUploadRequest;
+import ai.freightfox.doc.storage.service.demo.dto.request.CompletedPartRequest;
+import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.PresignedPartResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.PresignedUploadResponse;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileUploadException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lets clients upload straight to S3 with presigned URLs; the service only issues the
+ * URLs and verifies the finished object, so payload bytes never pass through the JVM.
+ */
+@Service
+@Slf4j
+public class PresignedUploadService {
+
+    private static final int MAX_PARTS = 10_000;
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private S3Presigner s3Presigner;
+
+    @Autowired
+    private FileKeyLayout fileKeyLayout;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Value("${aws.s3.bucket.name}")
+    private String s3BucketName;
+
+    @Value("${app.upload.presign-expiry-seconds:900}")
+    private long presignExpirySeconds;
+
+    @Value("${app.file.max-size:50MB}")
+    private DataSize maxFileSize;
+
+    @Value("${app.upload.multipart.max-size:5GB}")
+    private DataSize maxMultipartSize;
+
+    /**
+     * The declared size is signed into the URL as its Content-Length, so S3 rejects a PUT
+     * of any other size and the size limit and quota check cannot be bypassed.
+     */
+    public PresignedUploadResponse presignUpload(String userName, String fileName, String contentType, long fileSize) {
+        validate(userName, fileName);
+        validateSize(fileSize, maxFileSize);
+        storageService.checkUploadQuota(userName, fileName, fileSize);
+
+        String key = fileKeyLayout.buildFileKey(userName, fileName);
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(s3BucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(fileSize)
+                .build();
+
+        PutObjectPresignRequest presignRequest = PutObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofSeconds(presignExpirySeconds))
+                .putObjectRequest(putObjectRequest)
+                .build();
+
+        String uploadUrl = s3Presigner.presignPutObject(presignRequest).url().toString();
+        log.info("Issued presigned upload URL for {}", key);
+
+        return PresignedUploadResponse.builder()
+                .fileName(fileName)
+                .fileKey(key)
+                .uploadUrl(uploadUrl)
+                .expiresAt(Instant.now().plusSeconds(presignExpirySeconds))
+                .build();
+    }
+
+    /**
+     * Splits the declared size into {@code partCount} equal parts (the last one takes the
+     * remainder) and signs each part URL with its exact Content-Length, so the parts can
+     * never add up to more than the declared size.
+     */
+    public PresignedUploadResponse initiateMultipartUpload(String userName, String fileName, String contentType,
+                                                           long fileSize, int partCount) {
+        validate(userName, fileName);
+        validateSize(fileSize, maxMultipartSize);
+        if (partCount < 1 || partCount > MAX_PARTS) {
+            throw new BadRequestException("Part count must be between 1 and " + MAX_PARTS);
+        }
+        long partSize = (fileSize + partCount - 1) / partCount;
+        long lastPartSize = fileSize - partSize * (partCount - 1);
+        if (lastPartSize <= 0 || (partCount > 1 && partSize < MIN_PART_SIZE) || partSize > MAX_PART_SIZE) {
+            throw new BadRequestException("Part count " + partCount + " does not split " + fileSize
+                    + " bytes into parts between 5 MB and 5 GB");
+        }
+        storageService.checkUploadQuota(userName, fileName, fileSize);
+
+        String key = fileKeyLayout.buildFileKey(userName, fileName);
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(s3BucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+
+        String uploadId = s3Client.createMultipartUpload(createRequest).uploadId();
+
+        List<PresignedPartResponse> partUrls = new ArrayList<>(partCount);
+        for (int partNumber = 1; partNumber <= partCount; partNumber++) {
+            long size = partNumber < partCount ? partSize : lastPartSize;
+            partUrls.add(new PresignedPartResponse(partNumber, size, presignPart(key, uploadId, partNumber, size)));
+        }
+        log.info("Initiated presigned multipart upload {} for {} with {} parts", uploadId, key, partCount);
+
+        return PresignedUploadResponse.builder()
+                .fileName(fileName)
+                .fileKey(key)
+                .uploadId(uploadId)
+                .partUrls(partUrls)
+                .expiresAt(Instant.now().plusSeconds(presignExpirySeconds))
+                .build();
+    }
+
+    public FileMetadataResponse completeUpload(CompleteUploadRequest request) {
+        validate(request.getUserName(), request.getFileName());
+        String key = fileKeyLayout.buildFileKey(request.getUserName(), request.getFileName());
+
+        if (request.getUploadId() != null) {
+            completeMultipart(key, request);
+        }
+
+        return storageService.verifyStoredFile(request.getFileName(), key);
+    }
+
+    public void abortMultipartUpload(String userName, String fileName, String uploadId) {
+        validate(userName, fileName);
+        if (uploadId == null || uploadId.trim().isEmpty()) {
+            throw new BadRequestException("Upload id cannot be null or empty");
+        }
+
+        AbortMultipartUploadRequest abortRequest = AbortMultipartUploadRequest.builder()
+                .bucket(s3BucketName)
+                .key(fileKeyLayout.buildFileKey(userName, fileName))
+                .uploadId(uploadId)
+                .build();
+        try {
+            s3Client.abortMultipartUpload(abortRequest);
+        } catch (NoSuchUploadException e) {
+            throw new BadRequestException("Multipart upload not found: " + uploadId);
+        } catch (S3Exception e) {
+            log.error("Error aborting multipart upload {} for {}: {}", uploadId, fileName, e.getMessage());
+            throw new FileUploadException("Failed to abort upload , Please Try Again !!");
+        }
+    }
+
+    private void completeMultipart(String key, CompleteUploadRequest request) {
+        if (request.getParts() == null || request.getParts().isEmpty()) {
+            throw new BadRequestException("Parts are required to complete a multipart upload");
+        }
+
+        List<CompletedPart> parts = request.getParts().stream()
+                .sorted(Comparator.comparingInt(CompletedPartRequest::getPartNumber))
+                .map(part -> CompletedPart.builder()
+                        .partNumber(part.getPartNumber())
+                        .eTag(part.getETag())
+                        .build())
+                .toList();
+
+        CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                .bucket(s3BucketName)
+                .key(key)
+                .uploadId(request.getUploadId())
+                .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                .build();
+
+        try {
+            s3Client.completeMultipartUpload(completeRequest);
+        } catch (S3Exception e) {
+            log.error("Error completing multipart upload {} for {}: {}", request.getUploadId(), key, e.getMessage());
+            throw new FileUploadException("Failed to complete upload , Please Try Again !!");
+        }
+    }
+
+    private String presignPart(String key, String uploadId, int partNumber, long partSize) {
+        UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                .bucket(s3BucketName)
+                .key(key)
+                .uploadId(uploadId)
+                .partNumber(partNumber)
+                .contentLength(partSize)
+                .build();
+
+        UploadPartPresignRequest presignRequest = UploadPartPresignRequest.builder()
+                .signatureDuration(Duration.ofSeconds(presignExpirySeconds))
+                .uploadPartRequest(uploadPartRequest)
+                .build();
+
+        return s3Presigner.presignUploadPart(presignRequest).url().toString();
+    }
+
+    private void validateSize(long fileSize, DataSize limit) {
+        if (fileSize <= 0) {
+            throw new BadRequestException("File size must be greater than zero");
+        }
+        if (fileSize > limit.toBytes()) {
+            throw new BadRequestException("File size exceeds the limit of " + limit.toBytes() + " bytes");
+        }
+    }
+
+    private void validate(String userName, String fileName) {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new BadRequestException("Username cannot be null or empty");
+        }
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new BadRequestException("Filename cannot be null or empty");
+        }
+        if (fileName.contains("/")) {
+            throw new BadRequestException("Filename cannot contain '/'");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.RateLimitExceededException;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user token buckets with separate budgets for searches, uploaded bytes and deletes.
+ *
+ * <p>Each bucket is a single {@link AtomicLong} holding the time at which it will be full
+ * again (the generic cell rate algorithm), so taking tokens is one compare-and-set with no
+ * lock and no refill thread. Buckets that have refilled completely carry no state worth
+ * keeping and are dropped every {@code app.ratelimit.cleanup-interval-ms}.
+ *
+ * <p>Rejections are counted as {@code rate.limit.rejections}, tagged by operation.
+ */
+@Component
+@Slf4j
+public class RateLimiter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public enum Operation {
+        SEARCH("search"),
+        UPLOAD_BYTES("upload"),
+        DELETE("delete");
+
+        private final String tag;
+
+        Operation(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.ratelimit.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.ratelimit.search.per-second:20}")
+    private double searchPerSecond;
+
+    @Value("${app.ratelimit.search.burst:40}")
+    private long searchBurst;
+
+    @Value("${app.ratelimit.upload.bytes-per-second:10485760}")
+    private double uploadBytesPerSecond;
+
+    @Value("${app.ratelimit.upload.burst-bytes:104857600}")
+    private long uploadBurstBytes;
+
+    @Value("${app.ratelimit.delete.per-second:10}")
+    private double deletePerSecond;
+
+    @Value("${app.ratelimit.delete.burst:20}")
+    private long deleteBurst;
+
+    private final Map<Operation, Map<String, AtomicLong>> buckets = new EnumMap<>(Operation.class);
+
+    public RateLimiter() {
+        for (Operation operation : Operation.values()) {
+            buckets.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+
+    public void acquire(String userName, Operation operation) {
+        acquire(userName, operation, 1);
+    }
+
+    /**
+     * Takes {@code tokens} from the user's bucket for the operation or throws
+     * {@link RateLimitExceededException} with the time until they would be available.
+     * A request larger than the whole burst only needs a full bucket, but is charged in
+     * full: the bucket goes into debt until the whole amount has refilled.
+     */
+    public void acquire(String userName, Operation operation, long tokens) {
+        if (!enabled || tokens <= 0) {
+            return;
+        }
+        long burst = burst(operation);
+        long nanosPerToken = Math.max(1, (long) (NANOS_PER_SECOND / perSecond(operation)));
+        // Saturates rather than overflows for absurd sizes; the debt is then just very long
+        long cost = tokens > Long.MAX_VALUE / 4 / nanosPerToken ? Long.MAX_VALUE / 4 : tokens * nanosPerToken;
+        long capacity = burst * nanosPerToken;
+        long admission = Math.min(cost, capacity);
+
+        AtomicLong fullAt = buckets.get(operation).computeIfAbsent(userName, user -> new AtomicLong(System.nanoTime()));
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long base = current - now > 0 ? current : now;
+            long next = base + cost;
+            long wait = base + admission - now - capacity;
+            if (wait > 0) {
+                reject(userName, operation, wait);
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.ratelimit.cleanup-interval-ms:60000}")
+    public void removeFullBuckets() {
+        long now = System.nanoTime();
+        for (Map<String, AtomicLong> userBuckets : buckets.values()) {
+            // A bucket taken between the check and the removal just starts over full
+            userBuckets.entrySet().removeIf(entry -> entry.getValue().get() - now <= 0);
+        }
+    }
+
+    private void reject(String userName, Operation operation, long waitNanos) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("rate.limit.rejections", "operation", operation.tag).increment();
+        }
+        long retryAfterSeconds = Math.max(1, (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND);
+        log.debug("Rate limited {} for user {}, retry after {}s", operation.tag, userName, retryAfterSeconds);
+        throw new RateLimitExceededException("Too many " + operation.tag + " requests for user " + userName
+                + ", retry after " + retryAfterSeconds + " seconds", retryAfterSeconds);
+    }
+
+    private double perSecond(Operation operation) {
+        return switch (operation) {
+            case SEARCH -> searchPerSecond;
+            case UPLOAD_BYTES -> uploadBytesPerSecond;
+            case DELETE -> deletePerSecond;
+        };
+    }
+
+    private long burst(Operation operation) {
+        return switch (operation) {
+            case SEARCH -> searchBurst;
+            case UPLOAD_BYTES -> uploadBurstBytes;
+            case DELETE -> deleteBurst;
+        };
+    }
+}
@@ -0,0 +1,295 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.dto.response.ByteRangeResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.UploadSessionResponse;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileUploadException;
+import ai.freightfox.doc.storage.service.demo.model.UploadSession;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Chunked uploads that can be resumed after a dropped connection. Every chunk is an S3
+ * multipart part, and the part ETags are kept in {@link UploadSessionStore}, so a client
+ * only has to resend the chunks the session does not have yet.
+ */
+@Service
+@Slf4j
+public class ResumableUploadService {
+
+    // S3 rejects multipart parts smaller than this, except the last one
+    private static final long MIN_CHUNK_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10_000;
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private UploadSessionStore uploadSessionStore;
+
+    @Autowired
+    private FileKeyLayout fileKeyLayout;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Value("${aws.s3.bucket.name}")
+    private String s3BucketName;
+
+    @Value("${app.upload.sessions.chunk-size-bytes:8388608}")
+    private long chunkSize;
+
+    @Value("${app.upload.sessions.expiry-hours:24}")
+    private long expiryHours;
+
+    @PostConstruct
+    public void init() {
+        if (chunkSize < MIN_CHUNK_SIZE) {
+            throw new IllegalStateException("app.upload.sessions.chunk-size-bytes must be at least " + MIN_CHUNK_SIZE);
+        }
+    }
+
+    public UploadSessionResponse createSession(String userName, String fileName, long fileSize, String contentType) {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new BadRequestException("Username cannot be null or empty");
+        }
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new BadRequestException("Filename cannot be null or empty");
+        }
+        if (fileName.contains("/")) {
+            throw new BadRequestException("Filename cannot contain '/'");
+        }
+        if (fileSize <= 0) {
+            throw new BadRequestException("File size must be greater than zero");
+        }
+        if ((fileSize + chunkSize - 1) / chunkSize > MAX_PARTS) {
+            throw new BadRequestException("File is too large for a resumable upload");
+        }
+        storageService.checkUploadQuota(userName, fileName, fileSize);
+
+        String key = fileKeyLayout.buildFileKey(userName, fileName);
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .bucket(s3BucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+
+        UploadSession session = new UploadSession();
+        session.setSessionId(UUID.randomUUID().toString());
+        session.setUserName(userName);
+        session.setFileName(fileName);
+        session.setFileKey(key);
+        session.setContentType(contentType);
+        session.setUploadId(s3Client.createMultipartUpload(createRequest).uploadId());
+        session.setFileSize(fileSize);
+        session.setChunkSize(chunkSize);
+        session.setCreatedAt(Instant.now());
+        session.setExpiresAt(session.getCreatedAt().plus(Duration.ofHours(expiryHours)));
+        uploadSessionStore.save(session);
+
+        log.info("Created upload session {} for {} ({} bytes in {} chunks)",
+                session.getSessionId(), key, fileSize, session.totalChunks());
+        return toResponse(session);
+    }
+
+    public UploadSessionResponse uploadChunk(String sessionId, long offset, byte[] chunk) {
+        UploadSession session = getActiveSession(sessionId);
+
+        if (offset < 0 || offset >= session.getFileSize() || offset % session.getChunkSize() != 0) {
+            throw new BadRequestException("Offset must be a multiple of " + session.getChunkSize()
+                    + " below " + session.getFileSize());
+        }
+        long expectedLength = Math.min(session.getChunkSize(), session.getFileSize() - offset);
+        if (chunk == null || chunk.length != expectedLength) {
+            throw new BadRequestException("Chunk at offset " + offset + " must be " + expectedLength + " bytes");
+        }
+
+        int partNumber = (int) (offset / session.getChunkSize()) + 1;
+        UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                .bucket(s3BucketName)
+                .key(session.getFileKey())
+                .uploadId(session.getUploadId())
+                .partNumber(partNumber)
+                .contentLength((long) chunk.length)
+                .build();
+
+        String eTag;
+        try {
+            eTag = s3Client.uploadPart(uploadPartRequest, RequestBody.fromBytes(chunk)).eTag();
+        } catch (S3Exception e) {
+            log.error("Error uploading chunk {} of session {}: {}", partNumber, sessionId, e.getMessage());
+            throw new FileUploadException("Failed to upload chunk , Please Try Again !!");
+        }
+
+        synchronized (session) {
+            session.getPartETags().put(partNumber, eTag);
+            uploadSessionStore.save(session);
+            return toResponse(session);
+        }
+    }
+
+    public UploadSessionResponse getSession(String sessionId) {
+        UploadSession session = getActiveSession(sessionId);
+        synchronized (session) {
+            return toResponse(session);
+        }
+    }
+
+    /**
+     * Completes the upload. Committing again, say after the response was lost, returns the
+     * stored file's metadata while the session is kept, until it would have expired.
+     */
+    public FileMetadataResponse commit(String sessionId) {
+        UploadSession committed = uploadSessionStore.get(sessionId);
+        if (committed != null && committed.isCommitted()) {
+            return storageService.describeStoredFile(committed.getFileName(), committed.getFileKey());
+        }
+        UploadSession session = getActiveSession(sessionId);
+
+        List<CompletedPart> parts;
+        synchronized (session) {
+            if (session.getPartETags().size() != session.totalChunks()) {
+                throw new BadRequestException("Upload incomplete: received " + session.getPartETags().size()
+                        + " of " + session.totalChunks() + " chunks");
+            }
+            parts = session.getPartETags().entrySet().stream()
+                    .map(part -> CompletedPart.builder().partNumber(part.getKey()).eTag(part.getValue()).build())
+                    .toList();
+        }
+
+        CompleteMultipartUploadRequest completeRequest = CompleteMultipartUploadRequest.builder()
+                .bucket(s3BucketName)
+                .key(session.getFileKey())
+                .uploadId(session.getUploadId())
+                .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                .build();
+
+        try {
+            s3Client.completeMultipartUpload(completeRequest);
+        } catch (NoSuchUploadException e) {
+            // Completed before, but the session was not marked; the object decides
+            log.info("Upload of session {} already completed, checking {}", sessionId, session.getFileKey());
+        } catch (S3Exception e) {
+            log.error("Error committing upload session {}: {}", sessionId, e.getMessage());
+            throw new FileUploadException("Failed to complete upload , Please Try Again !!");
+        }
+
+        FileMetadataResponse stored = storageService.verifyStoredFile(session.getFileName(), session.getFileKey());
+        synchronized (session) {
+            session.setCommitted(true);
+            uploadSessionStore.save(session);
+        }
+        log.info("Committed upload session {} to {}", sessionId, session.getFileKey());
+        return stored;
+    }
+
+    public void abort(String sessionId) {
+        UploadSession session = uploadSessionStore.get(sessionId);
+        if (session == null) {
+            throw new BadRequestException("Upload session not found: " + sessionId);
+        }
+        if (session.isCommitted()) {
+            throw new BadRequestException("Upload session already committed: " + sessionId);
+        }
+        abortMultipartUpload(session);
+        uploadSessionStore.remove(sessionId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.sessions.cleanup-interval-ms:600000}")
+    public void cleanupExpiredSessions() {
+        Instant now = Instant.now();
+        for (UploadSession session : uploadSessionStore.all()) {
+            if (session.isExpired(now)) {
+                try {
+                    if (!session.isCommitted()) {
+                        abortMultipartUpload(session);
+                    }
+                    uploadSessionStore.remove(session.getSessionId());
+                    log.info("Removed expired upload session {}", session.getSessionId());
+                } catch (Exception e) {
+                    log.warn("Could not clean up upload session {}: {}", session.getSessionId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private UploadSession getActiveSession(String sessionId) {
+        UploadSession session = uploadSessionStore.get(sessionId);
+        if (session == null) {
+            throw new BadRequestException("Upload session not found: " + sessionId);
+        }
+        if (session.isExpired(Instant.now())) {
+            throw new BadRequestException("Upload session expired: " + sessionId);
+        }
+        if (session.isCommitted()) {
+            throw new BadRequestException("Upload session already committed: " + sessionId);
+        }
+        return session;
+    }
+
+    private void abortMultipartUpload(UploadSession session) {
+        AbortMultipartUploadRequest abortRequest = AbortMultipartUploadRequest.builder()
+                .bucket(s3BucketName)
+                .key(session.getFileKey())
+                .uploadId(session.getUploadId())
+                .build();
+        try {
+            s3Client.abortMultipartUpload(abortRequest);
+        } catch (NoSuchUploadException e) {
+            log.debug("Multipart upload {} already gone", session.getUploadId());
+        }
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session) {
+        List<ByteRangeResponse> ranges = new ArrayList<>();
+        List<Long> missingOffsets = new ArrayList<>();
+        long receivedBytes = 0;
+        ByteRangeResponse current = null;
+
+        for (int partNumber = 1; partNumber <= session.totalChunks(); partNumber++) {
+            long start = (partNumber - 1) * session.getChunkSize();
+            long end = Math.min(start + session.getChunkSize(), session.getFileSize()) - 1;
+
+            if (!session.getPartETags().containsKey(partNumber)) {
+                missingOffsets.add(start);
+                current = null;
+                continue;
+            }
+
+            receivedBytes += end - start + 1;
+            if (current == null) {
+                current = new ByteRangeResponse(start, end);
+                ranges.add(current);
+            } else {
+                current.setEnd(end);
+            }
+        }
+
+        return UploadSessionResponse.builder()
+                .sessionId(session.getSessionId())
+                .fileName(session.getFileName())
+                .fileKey(session.getFileKey())
+                .fileSize(session.getFileSize())
+                .chunkSize(session.getChunkSize())
+                .totalChunks(session.totalChunks())
+                .receivedBytes(receivedBytes)
+                .receivedRanges(ranges)
+                .missingOffsets(missingOffsets)
+                .expiresAt(session.getExpiresAt())
+                .build();
+    }
+}
@@ -0,0 +1,269 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sends a duplicate of a slow S3 read once it has been outstanding longer than the
+ * configured latency percentile for that operation, and returns whichever attempt
+ * succeeds first. Hedges are capped at {@code budget-ratio} of the reads made over the last
+ * {@code budget-window-seconds}, so a quiet spell does not bank hedges for a later burst.
+ *
+ * <p>The percentile is recomputed every {@value #RECOMPUTE_EVERY} samples rather than on
+ * each read.
+ */
+@Component
+@Slf4j
+public class S3ReadHedger {
+
+    private static final int WINDOW_SIZE = 256;
+    private static final int WARMUP_SAMPLES = 20;
+    private static final int RECOMPUTE_EVERY = 16;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.s3.hedging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.s3.hedging.percentile:0.95}")
+    private double percentile;
+
+    @Value("${app.s3.hedging.min-delay-ms:20}")
+    private long minDelayMs;
+
+    @Value("${app.s3.hedging.budget-ratio:0.05}")
+    private double budgetRatio;
+
+    @Value("${app.s3.hedging.budget-window-seconds:10}")
+    private int budgetWindowSeconds;
+
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+    private final AtomicLong totalReads = new AtomicLong();
+    private final AtomicLong hedgesSent = new AtomicLong();
+
+    private ExecutorService executor;
+    private BudgetWindow budget;
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            budget = new BudgetWindow(Math.max(1, budgetWindowSeconds));
+            executor = Executors.newVirtualThreadPerTaskExecutor();
+            log.info("S3 read hedging enabled at p{} with a {}% budget", percentile * 100, budgetRatio * 100);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public <T> T execute(String operation, Supplier<T> call) {
+        if (!enabled || executor == null) {
+            return call.get();
+        }
+
+        totalReads.incrementAndGet();
+        budget.recordRead();
+        increment("s3.read.requests", operation);
+
+        LatencyWindow window = windows.computeIfAbsent(operation, op -> new LatencyWindow());
+        long startNanos = System.nanoTime();
+        CompletableFuture<T> primary = CompletableFuture.supplyAsync(call, executor);
+
+        long delayMs = window.hedgeDelayMs();
+        if (delayMs < 0) {
+            T result = await(primary);
+            window.record(System.nanoTime() - startNanos);
+            return result;
+        }
+
+        try {
+            T result = primary.get(delayMs, TimeUnit.MILLISECONDS);
+            window.record(System.nanoTime() - startNanos);
+            return result;
+        } catch (TimeoutException e) {
+            // fall through and consider hedging
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            primary.cancel(true);
+            throw new IllegalStateException("Interrupted while waiting for S3 " + operation, e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+
+        if (!tryAcquireHedge()) {
+            T result = await(primary);
+            window.record(System.nanoTime() - startNanos);
+            return result;
+        }
+
+        increment("s3.read.hedges", operation);
+        CompletableFuture<T> hedge = CompletableFuture.supplyAsync(call, executor);
+
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(2);
+        primary.whenComplete((value, error) -> complete(winner, pending, value, error, false, operation));
+        hedge.whenComplete((value, error) -> complete(winner, pending, value, error, true, operation));
+
+        T result = await(winner);
+        window.record(System.nanoTime() - startNanos);
+        primary.cancel(false);
+        hedge.cancel(false);
+        return result;
+    }
+
+    public long getTotalReads() {
+        return totalReads.get();
+    }
+
+    public long getHedgesSent() {
+        return hedgesSent.get();
+    }
+
+    private <T> void complete(CompletableFuture<T> winner, AtomicInteger pending, T value, Throwable error,
+                              boolean isHedge, String operation) {
+        if (error == null) {
+            if (winner.complete(value) && isHedge) {
+                increment("s3.read.hedge.wins", operation);
+            }
+        } else if (pending.decrementAndGet() == 0) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private boolean tryAcquireHedge() {
+        if (!budget.tryAcquireHedge(budgetRatio)) {
+            return false;
+        }
+        hedgesSent.incrementAndGet();
+        return true;
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private RuntimeException unwrap(Throwable cause) {
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private void increment(String name, String operation) {
+        if (meterRegistry != null) {
+            meterRegistry.counter(name, "operation", operation).increment();
+        }
+    }
+
+    private class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private final long[] sorted = new long[WINDOW_SIZE];
+        private int next;
+        private int count;
+        private int sinceRecompute;
+        // -1 until enough samples exist to estimate the percentile
+        private volatile long delayMs = -1;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW_SIZE;
+            if (count < WINDOW_SIZE) {
+                count++;
+            }
+            if (count >= WARMUP_SAMPLES && (delayMs < 0 || ++sinceRecompute >= RECOMPUTE_EVERY)) {
+                sinceRecompute = 0;
+                System.arraycopy(samples, 0, sorted, 0, count);
+                Arrays.sort(sorted, 0, count);
+                int index = (int) Math.min(count - 1, Math.ceil(percentile * count) - 1);
+                delayMs = Math.max(TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(index, 0)]), minDelayMs);
+            }
+        }
+
+        long hedgeDelayMs() {
+            return delayMs;
+        }
+    }
+
+    /**
+     * Reads and hedges per second over the last few seconds, in a ring of one-second slots.
+     */
+    private static final class BudgetWindow {
+        private final long[] slotSecond;
+        private final long[] reads;
+        private final long[] hedges;
+
+        private BudgetWindow(int seconds) {
+            slotSecond = new long[seconds];
+            reads = new long[seconds];
+            hedges = new long[seconds];
+        }
+
+        synchronized void recordRead() {
+            reads[slot(currentSecond())]++;
+        }
+
+        synchronized boolean tryAcquireHedge(double ratio) {
+            long now = currentSecond();
+            slot(now);
+            long windowReads = 0;
+            long windowHedges = 0;
+            for (int i = 0; i < slotSecond.length; i++) {
+                if (now - slotSecond[i] < slotSecond.length) {
+                    windowReads += reads[i];
+                    windowHedges += hedges[i];
+                }
+            }
+            if (windowHedges + 1 > windowReads * ratio) {
+                return false;
+            }
+            hedges[slot(now)]++;
+            return true;
+        }
+
+        // The slot for the given second, cleared first if it still holds an older second
+        private int slot(long second) {
+            int index = (int) Math.floorMod(second, (long) slotSecond.length);
+            if (slotSecond[index] != second) {
+                slotSecond[index] = second;
+                reads[index] = 0;
+                hedges[index] = 0;
+            }
+            return index;
+        }
+
+        private static long currentSecond() {
+            return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,716 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
+import ai.freightfox.doc.storage.service.demo.model.PackIndex;
+import ai.freightfox.doc.storage.service.demo.model.PackedFile;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Packs small uploads into larger per-user S3 objects so per-request cost is paid once per
+ * pack rather than once per file.
+ *
+ * <p>New files are appended to a local open pack (data file plus a JSON-lines journal, both
+ * fsync'd) and the open pack is sealed to {@code prefix/userName/packId.pack} once it is
+ * full or old enough. Sealed locations are kept in {@code prefix/userName/index.json} and
+ * read back with ranged GETs. Deletes only drop index entries; compaction rewrites packs
+ * whose dead bytes pass {@code min-garbage-ratio}.
+ *
+ * <p>The index is written with a conditional PUT on the ETag it was read with, so
+ * concurrent writers on this or any other instance never overwrite each other: the loser
+ * reloads the index and applies its change again. Each write is published as a
+ * {@link FileChangeEvent} for the index key, and relayed ones drop the cached copy.
+ *
+ * <p>A user's open packs are guarded by that user's {@link UserPacks} monitor, which is
+ * never held across S3 calls; the cached index is an immutable snapshot.
+ *
+ * <p>Until sealed, a file is only in an open pack on the replica that took it. Other
+ * replicas can neither read nor delete it there, and sealing later could bring back a file
+ * deleted elsewhere or hide a newer S3 copy. Each user must therefore be routed to one
+ * replica (sticky sessions) while packing is enabled, and packing refuses to start when
+ * {@code app.events.stream} relays changes between replicas.
+ */
+@Component
+@Slf4j
+public class SmallFilePacker {
+
+    private static final String INDEX_FILE = "index.json";
+    private static final int MAX_INDEX_WRITE_ATTEMPTS = 5;
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private S3ReadHedger s3ReadHedger;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.upload.packing.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.upload.packing.dir:${app.data.dir:${user.home}/.ffox-doc-storage}/open-packs}")
+    private String packingDir;
+
+    @Value("${app.upload.packing.prefix:_packs}")
+    private String keyPrefix;
+
+    @Value("${app.upload.packing.max-file-bytes:65536}")
+    private long maxFileBytes;
+
+    @Value("${app.upload.packing.pack-target-bytes:8388608}")
+    private long packTargetBytes;
+
+    @Value("${app.upload.packing.seal-after-ms:60000}")
+    private long sealAfterMs;
+
+    @Value("${app.upload.packing.min-garbage-ratio:0.5}")
+    private double minGarbageRatio;
+
+    @Value("${app.events.stream:none}")
+    private String eventsStream;
+
+    @Value("${aws.s3.bucket.name}")
+    private String s3BucketName;
+
+    private final Map<String, UserPacks> users = new ConcurrentHashMap<>();
+
+    private Path directory;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (eventsStream != null && !eventsStream.isBlank() && !"none".equalsIgnoreCase(eventsStream)) {
+            throw new IllegalStateException("app.upload.packing.enabled needs sticky routing and cannot be combined"
+                    + " with app.events.stream=" + eventsStream);
+        }
+        directory = Paths.get(packingDir);
+        Files.createDirectories(directory);
+        replayOpenPacks();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean accepts(long fileSize) {
+        return enabled && fileSize > 0 && fileSize <= maxFileBytes;
+    }
+
+    /**
+     * Whether the key is a pack object or pack index rather than a user file.
+     */
+    public boolean isInternalKey(String key) {
+        return key.startsWith(keyPrefix + "/");
+    }
+
+    /**
+     * The user whose pack index is stored at the key, or null for any other key.
+     */
+    public String indexOwner(String key) {
+        if (key == null || !isInternalKey(key) || !key.endsWith("/" + INDEX_FILE)) {
+            return null;
+        }
+        String userName = key.substring(keyPrefix.length() + 1, key.length() - INDEX_FILE.length() - 1);
+        return userName.isEmpty() || userName.contains("/") ? null : userName;
+    }
+
+    public PackedFile append(String userName, String fileName, String contentType, byte[] content) {
+        UserPacks packs = userPacks(userName);
+        synchronized (packs) {
+            OpenPack open = packs.active();
+            if (open == null || open.size + content.length > packTargetBytes) {
+                open = newOpenPack(userName);
+                packs.openPacks.add(open);
+            }
+
+            PackedFile file = PackedFile.builder()
+                    .userName(userName)
+                    .fileName(fileName)
+                    .packKey(open.packKey)
+                    .offset(open.size)
+                    .length(content.length)
+                    .contentType(contentType)
+                    .lastModified(Instant.now())
+                    .build();
+
+            try {
+                appendDurably(open.data, content);
+                appendJournal(open, file);
+            } catch (IOException e) {
+                truncate(open);
+                throw new UncheckedIOException("Failed to pack " + fileName + " for user " + userName, e);
+            }
+
+            open.size += content.length;
+            open.files.put(fileName, file);
+            log.info("Packed {} ({} bytes) into {} at offset {}", fileName, content.length, open.packKey, file.getOffset());
+            return file;
+        }
+    }
+
+    public PackedFile find(String userName, String fileName) {
+        if (!enabled) {
+            return null;
+        }
+        UserPacks packs = userPacks(userName);
+        synchronized (packs) {
+            for (int i = packs.openPacks.size() - 1; i >= 0; i--) {
+                PackedFile file = packs.openPacks.get(i).files.get(fileName);
+                if (file != null) {
+                    return file;
+                }
+            }
+        }
+        return index(packs).getFiles().get(fileName);
+    }
+
+    public List<PackedFile> listFiles(String userName) {
+        if (!enabled) {
+            return List.of();
+        }
+        UserPacks packs = userPacks(userName);
+        Map<String, PackedFile> files = new TreeMap<>(index(packs).getFiles());
+        synchronized (packs) {
+            for (OpenPack open : packs.openPacks) {
+                files.putAll(open.files);
+            }
+            return List.copyOf(files.values());
+        }
+    }
+
+    public byte[] read(PackedFile file) {
+        UserPacks packs = userPacks(file.getUserName());
+        synchronized (packs) {
+            for (OpenPack open : packs.openPacks) {
+                if (open.packKey.equals(file.getPackKey())) {
+                    return readLocal(open, file);
+                }
+            }
+        }
+
+        try {
+            return readRange(file);
+        } catch (NoSuchKeyException e) {
+            // Compaction moved the file after it was looked up
+            PackedFile moved = find(file.getUserName(), file.getFileName());
+            if (moved == null || moved.getPackKey().equals(file.getPackKey())) {
+                throw e;
+            }
+            return read(moved);
+        }
+    }
+
+    public boolean remove(String userName, String fileName) {
+        if (!enabled) {
+            return false;
+        }
+        UserPacks packs = userPacks(userName);
+        boolean removed = false;
+        synchronized (packs) {
+            for (OpenPack open : packs.openPacks) {
+                PackedFile file = open.files.remove(fileName);
+                if (file != null) {
+                    try {
+                        appendJournal(open, file.toBuilder().deleted(true).build());
+                    } catch (IOException e) {
+                        open.files.put(fileName, file);
+                        throw new UncheckedIOException("Failed to record delete of " + fileName, e);
+                    }
+                    removed = true;
+                }
+            }
+        }
+        return updateIndex(packs, index -> index.getFiles().remove(fileName) != null) || removed;
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        // Local writes already updated the cache; a relayed one means another instance wrote
+        String owner = enabled && event.getOrigin() != null ? indexOwner(event.getFileKey()) : null;
+        UserPacks packs = owner != null ? users.get(owner) : null;
+        if (packs == null) {
+            return;
+        }
+        synchronized (packs) {
+            IndexSnapshot cached = packs.index;
+            if (cached != null && (event.getETag() == null || !event.getETag().equals(cached.eTag()))) {
+                packs.index = null;
+                log.debug("Dropped cached pack index for user {} after a remote change", packs.userName);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.packing.seal-interval-ms:5000}")
+    public void sealOpenPacks() {
+        if (!enabled) {
+            return;
+        }
+        Instant sealBefore = Instant.now().minus(Duration.ofMillis(sealAfterMs));
+        for (UserPacks packs : users.values()) {
+            List<OpenPack> due = new ArrayList<>();
+            synchronized (packs) {
+                for (OpenPack open : packs.openPacks) {
+                    boolean isActive = open == packs.active();
+                    if (isActive && open.size < packTargetBytes && open.openedAt.isAfter(sealBefore)) {
+                        continue;
+                    }
+                    // From here on appends go to a new pack
+                    open.sealing = true;
+                    due.add(open);
+                }
+            }
+            for (OpenPack open : due) {
+                try {
+                    seal(packs, open);
+                } catch (Exception e) {
+                    log.warn("Failed to seal pack {}, will retry: {}", open.packKey, e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.upload.packing.compaction-interval-ms:600000}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        for (UserPacks packs : users.values()) {
+            IndexSnapshot cached = packs.index;
+            if (cached == null) {
+                continue;
+            }
+            try {
+                compactUser(packs, cached.index());
+            } catch (Exception e) {
+                log.warn("Failed to compact packs for user {}: {}", packs.userName, e.getMessage());
+            }
+        }
+    }
+
+    private void seal(UserPacks packs, OpenPack open) throws IOException {
+        // A sealing pack takes no appends, so only deletes can change it from here on
+        Map<String, PackedFile> published;
+        long size;
+        synchronized (packs) {
+            published = new LinkedHashMap<>(open.files);
+            size = open.size;
+        }
+
+        if (!published.isEmpty()) {
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(s3BucketName)
+                    .key(open.packKey)
+                    .contentType("application/octet-stream")
+                    .contentLength(size)
+                    .build();
+            s3Client.putObject(putObjectRequest, RequestBody.fromFile(open.data));
+
+            updateIndex(packs, index -> {
+                for (PackedFile file : published.values()) {
+                    // A newer copy sealed from a later pack keeps its place
+                    index.getFiles().merge(file.getFileName(), file, (current, sealed) ->
+                            sealed.getLastModified().isBefore(current.getLastModified()) ? current : sealed);
+                }
+                index.getPackSizes().put(open.packKey, size);
+                return true;
+            });
+            log.info("Sealed pack {} with {} files ({} bytes)", open.packKey, published.size(), size);
+        }
+
+        // Files deleted while the pack was uploading must leave the index too
+        while (true) {
+            List<PackedFile> deleted;
+            synchronized (packs) {
+                deleted = published.values().stream()
+                        .filter(file -> !file.equals(open.files.get(file.getFileName())))
+                        .toList();
+                if (deleted.isEmpty()) {
+                    packs.openPacks.remove(open);
+                    break;
+                }
+            }
+            updateIndex(packs, index -> {
+                boolean changed = false;
+                for (PackedFile file : deleted) {
+                    changed |= index.getFiles().remove(file.getFileName(), file);
+                }
+                return changed;
+            });
+            deleted.forEach(file -> published.remove(file.getFileName()));
+        }
+        Files.deleteIfExists(open.journal);
+        Files.deleteIfExists(open.data);
+    }
+
+    private void compactUser(UserPacks packs, PackIndex index) {
+        Map<String, Long> liveBytes = new HashMap<>();
+        for (PackedFile file : index.getFiles().values()) {
+            liveBytes.merge(file.getPackKey(), file.getLength(), Long::sum);
+        }
+
+        for (Map.Entry<String, Long> pack : List.copyOf(index.getPackSizes().entrySet())) {
+            String packKey = pack.getKey();
+            long live = liveBytes.getOrDefault(packKey, 0L);
+            double garbageRatio = 1.0 - (double) live / Math.max(pack.getValue(), 1L);
+            if (garbageRatio < minGarbageRatio) {
+                continue;
+            }
+
+            boolean released = live > 0
+                    ? rewritePack(packs, index, packKey, live)
+                    : updateIndex(packs, latest -> !references(latest, packKey) && latest.getPackSizes().remove(packKey) != null);
+            if (released) {
+                s3Client.deleteObject(DeleteObjectRequest.builder().bucket(s3BucketName).key(packKey).build());
+                log.info("Compacted pack {} ({}% garbage)", packKey, Math.round(garbageRatio * 100));
+            }
+        }
+    }
+
+    /**
+     * Copies the live files of a pack into a new one and points the index at it. Returns
+     * whether the old pack is no longer referenced and can be deleted.
+     */
+    private boolean rewritePack(UserPacks packs, PackIndex index, String packKey, long liveBytes) {
+        GetObjectRequest getRequest = GetObjectRequest.builder().bucket(s3BucketName).key(packKey).build();
+        byte[] oldPack = s3ReadHedger.execute("GetObject", () -> s3Client.getObjectAsBytes(getRequest).asByteArray());
+
+        String newPackKey = packKey(packs.userName, UUID.randomUUID().toString());
+        ByteBuffer newPack = ByteBuffer.allocate((int) liveBytes);
+        List<PackedFile> originals = new ArrayList<>();
+        List<PackedFile> moved = new ArrayList<>();
+        for (PackedFile file : index.getFiles().values()) {
+            if (!file.getPackKey().equals(packKey)) {
+                continue;
+            }
+            originals.add(file);
+            moved.add(file.toBuilder().packKey(newPackKey).offset(newPack.position()).build());
+            newPack.put(oldPack, (int) file.getOffset(), (int) file.getLength());
+        }
+
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(s3BucketName)
+                .key(newPackKey)
+                .contentType("application/octet-stream")
+                .contentLength(liveBytes)
+                .build();
+        s3Client.putObject(putObjectRequest, RequestBody.fromBytes(newPack.array()));
+
+        // The index must point at the new pack before the old one is deleted. Files deleted
+        // or replaced since the snapshot keep their current entry.
+        boolean switched = updateIndex(packs, latest -> {
+            for (int i = 0; i < moved.size(); i++) {
+                latest.getFiles().replace(moved.get(i).getFileName(), originals.get(i), moved.get(i));
+            }
+            if (references(latest, packKey)) {
+                return false;
+            }
+            latest.getPackSizes().remove(packKey);
+            latest.getPackSizes().put(newPackKey, liveBytes);
+            return true;
+        });
+        if (!switched) {
+            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(s3BucketName).key(newPackKey).build());
+        }
+        return switched;
+    }
+
+    private static boolean references(PackIndex index, String packKey) {
+        return index.getFiles().values().stream().anyMatch(file -> file.getPackKey().equals(packKey));
+    }
+
+    private byte[] readRange(PackedFile file) {
+        GetObjectRequest getRequest = GetObjectRequest.builder()
+                .bucket(s3BucketName)
+                .key(file.getPackKey())
+                .range("bytes=" + file.getOffset() + "-" + (file.getOffset() + file.getLength() - 1))
+                .build();
+        return s3ReadHedger.execute("GetObject", () -> s3Client.getObjectAsBytes(getRequest).asByteArray());
+    }
+
+    private byte[] readLocal(OpenPack open, PackedFile file) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) file.getLength());
+        try (FileChannel channel = FileChannel.open(open.data, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, file.getOffset() + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of pack " + open.packKey);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read packed file " + file.getFileName(), e);
+        }
+        return buffer.array();
+    }
+
+    private UserPacks userPacks(String userName) {
+        return users.computeIfAbsent(userName, UserPacks::new);
+    }
+
+    // Never mutate the returned index; changes go through updateIndex
+    private PackIndex index(UserPacks packs) {
+        return snapshot(packs).index();
+    }
+
+    private IndexSnapshot snapshot(UserPacks packs) {
+        IndexSnapshot cached = packs.index;
+        if (cached != null) {
+            return cached;
+        }
+        IndexSnapshot loaded = loadIndex(packs.userName);
+        synchronized (packs) {
+            // Keep whatever a concurrent load or write stored first
+            if (packs.index == null) {
+                packs.index = loaded;
+            }
+            return packs.index;
+        }
+    }
+
+    /**
+     * Applies {@code change} to a copy of the latest index and writes it conditionally. If
+     * another writer got there first, the index is reloaded and the change applied again.
+     * Returns false, without writing, when the change reports it did nothing.
+     */
+    private boolean updateIndex(UserPacks packs, Predicate<PackIndex> change) {
+        for (int attempt = 1; ; attempt++) {
+            IndexSnapshot base = snapshot(packs);
+            PackIndex updated = new PackIndex();
+            updated.getFiles().putAll(base.index().getFiles());
+            updated.getPackSizes().putAll(base.index().getPackSizes());
+            if (!change.test(updated)) {
+                return false;
+            }
+
+            String eTag;
+            try {
+                eTag = saveIndex(packs.userName, updated, base.eTag());
+            } catch (S3Exception e) {
+                if (!isConditionFailure(e) || attempt >= MAX_INDEX_WRITE_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Pack index for user {} changed underneath us, reloading", packs.userName);
+                synchronized (packs) {
+                    if (packs.index == base) {
+                        packs.index = null;
+                    }
+                }
+                continue;
+            }
+
+            synchronized (packs) {
+                if (packs.index == base) {
+                    packs.index = new IndexSnapshot(updated, eTag);
+                }
+            }
+            eventPublisher.publishEvent(FileChangeEvent.builder()
+                    .type(FileChangeEvent.Type.UPSERT)
+                    .fileKey(indexKey(packs.userName))
+                    .eTag(eTag)
+                    .lastModified(Instant.now())
+                    .build());
+            return true;
+        }
+    }
+
+    private IndexSnapshot loadIndex(String userName) {
+        GetObjectRequest getRequest = GetObjectRequest.builder()
+                .bucket(s3BucketName)
+                .key(indexKey(userName))
+                .build();
+        try {
+            ResponseBytes<GetObjectResponse> object = s3ReadHedger.execute("GetObject", () -> s3Client.getObjectAsBytes(getRequest));
+            return new IndexSnapshot(objectMapper.readValue(object.asByteArray(), PackIndex.class), object.response().eTag());
+        } catch (NoSuchKeyException e) {
+            return new IndexSnapshot(new PackIndex(), null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt pack index for user " + userName, e);
+        }
+    }
+
+    /**
+     * Writes the index only if it still has the ETag it was read with, or only if there is
+     * none yet. The SDK version in use has no builder field for these, so they are sent as
+     * plain request headers.
+     */
+    private String saveIndex(String userName, PackIndex index, String expectedETag) {
+        AwsRequestOverrideConfiguration condition = AwsRequestOverrideConfiguration.builder()
+                .putHeader(expectedETag != null ? "If-Match" : "If-None-Match", expectedETag != null ? expectedETag : "*")
+                .build();
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(index);
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(s3BucketName)
+                    .key(indexKey(userName))
+                    .contentType("application/json")
+                    .overrideConfiguration(condition)
+                    .build();
+            return s3Client.putObject(putObjectRequest, RequestBody.fromBytes(json)).eTag();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write pack index for user " + userName, e);
+        }
+    }
+
+    private static boolean isConditionFailure(S3Exception e) {
+        // 412 when the ETag no longer matches, 409 when a concurrent conditional write is in progress
+        return e.statusCode() == 412 || e.statusCode() == 409;
+    }
+
+    private OpenPack newOpenPack(String userName) {
+        String packId = UUID.randomUUID().toString();
+        OpenPack open = new OpenPack(packKey(userName, packId),
+                directory.resolve(packId + ".pack"), directory.resolve(packId + ".journal"));
+        open.openedAt = Instant.now();
+        return open;
+    }
+
+    private void appendJournal(OpenPack open, PackedFile file) throws IOException {
+        byte[] line = (objectMapper.writeValueAsString(file) + "\n").getBytes(StandardCharsets.UTF_8);
+        appendDurably(open.journal, line);
+    }
+
+    private void appendDurably(Path path, byte[] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private void truncate(OpenPack open) {
+        try (FileChannel channel = FileChannel.open(open.data, StandardOpenOption.WRITE)) {
+            channel.truncate(open.size);
+        } catch (IOException e) {
+            log.warn("Could not truncate pack {} after a failed append: {}", open.packKey, e.getMessage());
+        }
+    }
+
+    private void replayOpenPacks() throws IOException {
+        List<Path> journals;
+        try (Stream<Path> files = Files.list(directory)) {
+            journals = files.filter(path -> path.toString().endsWith(".journal")).toList();
+        }
+
+        for (Path journal : journals) {
+            String packId = journal.getFileName().toString().replace(".journal", "");
+            Path data = journal.resolveSibling(packId + ".pack");
+            Map<String, PackedFile> files = new LinkedHashMap<>();
+            String userName = null;
+            String packKey = null;
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                PackedFile file;
+                try {
+                    file = objectMapper.readValue(line, PackedFile.class);
+                } catch (IOException e) {
+                    // A torn last line from a crash mid-append; that upload was never acknowledged
+                    log.warn("Ignoring unreadable line in pack journal {}", journal);
+                    continue;
+                }
+                userName = file.getUserName();
+                packKey = file.getPackKey();
+                if (file.isDeleted()) {
+                    files.remove(file.getFileName());
+                } else {
+                    files.put(file.getFileName(), file);
+                }
+            }
+
+            if (userName == null || !Files.exists(data)) {
+                Files.deleteIfExists(journal);
+                Files.deleteIfExists(data);
+                continue;
+            }
+
+            OpenPack open = new OpenPack(packKey, data, journal);
+            open.size = Files.size(data);
+            open.openedAt = Files.getLastModifiedTime(data).toInstant();
+            open.files.putAll(files);
+            UserPacks packs = userPacks(userName);
+            packs.openPacks.add(open);
+            packs.openPacks.sort(Comparator.comparing(pack -> pack.openedAt));
+        }
+
+        if (!journals.isEmpty()) {
+            log.info("Replayed {} open packs from {}", journals.size(), directory);
+        }
+    }
+
+    private String packKey(String userName, String packId) {
+        return keyPrefix + "/" + userName + "/" + packId + ".pack";
+    }
+
+    private String indexKey(String userName) {
+        return keyPrefix + "/" + userName + "/" + INDEX_FILE;
+    }
+
+    private record IndexSnapshot(PackIndex index, String eTag) {
+    }
+
+    private static final class UserPacks {
+        private final String userName;
+        // Replaced, never mutated, so it can be read without the monitor
+        private volatile IndexSnapshot index;
+        // Oldest first; the last one takes new appends unless it is being sealed
+        private final List<OpenPack> openPacks = new ArrayList<>();
+
+        UserPacks(String userName) {
+            this.userName = userName;
+        }
+
+        OpenPack active() {
+            OpenPack last = openPacks.isEmpty() ? null : openPacks.get(openPacks.size() - 1);
+            return last == null || last.sealing ? null : last;
+        }
+    }
+
+    private static final class OpenPack {
+        private final String packKey;
+        private final Path data;
+        private final Path journal;
+        private final Map<String, PackedFile> files = new LinkedHashMap<>();
+        private long size;
+        private Instant openedAt;
+        private boolean sealing;
+
+        OpenPack(String packKey, Path data, Path journal) {
+            this.packKey = packKey;
+            this.data = data;
+            this.journal = journal;
+        }
+    }
+}
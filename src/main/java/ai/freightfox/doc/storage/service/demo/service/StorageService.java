@@ -1,12 +1,26 @@
 package ai.freightfox.doc.storage.service.demo.service;
 
+import ai.freightfox.doc.storage.service.demo.dto.request.FileSearchFilter;
 import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileSearchException;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileUploadException;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.QuotaExceededException;
+import ai.freightfox.doc.storage.service.demo.model.CatalogEntry;
+import ai.freightfox.doc.storage.service.demo.model.FileDownload;
+import ai.freightfox.doc.storage.service.demo.model.FileListing;
+import ai.freightfox.doc.storage.service.demo.model.PackedFile;
+import ai.freightfox.doc.storage.service.demo.model.SearchPage;
+import ai.freightfox.doc.storage.service.demo.model.SpoolEntry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.core.sync.RequestBody;
@@ -16,60 +30,152 @@ import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.time.Instant;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @Slf4j
 public class StorageService {
 
+    private static final String DOWNLOAD_PATH = "/api/freight-fox/s3-bucket/download/";
+    private static final int LIST_PAGE_SIZE = 1000;
+
+    /**
+     * File-name order, compared in place in the keys; the full key breaks ties.
+     */
+    private static final Comparator<S3Object> FILE_NAME_ORDER = (left, right) -> {
+        int byName = compareFileNames(left.key(), right.key());
+        return byName != 0 ? byName : left.key().compareTo(right.key());
+    };
+
     @Autowired
     private S3Client s3Client;
     
     @Autowired
     private S3Presigner s3Presigner;
 
+    @Autowired
+    private S3ReadHedger s3ReadHedger;
+
+    @Autowired
+    private FileKeyLayout fileKeyLayout;
+
+    @Autowired
+    private UploadSpool uploadSpool;
+
+    @Autowired
+    private SmallFilePacker smallFilePacker;
+
+    @Autowired
+    private MetadataCatalog metadataCatalog;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private UsageTracker usageTracker;
+
     @Value("${aws.s3.bucket.name}")
     private String s3BucketName;
 
     @Value("${app.download.url-expiry-seconds}")
     private long urlExpirySeconds;
 
+    private final ExecutorService listingExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupts prefix fetches still in flight
+        listingExecutor.shutdownNow();
+    }
+
     public List<FileMetadataResponse> searchFiles(String userName, String searchTerm, int page, int size){
+        return searchFiles(userName, searchTerm, null, page, size);
+    }
+
+    public List<FileMetadataResponse> searchFiles(String userName, String searchTerm, FileSearchFilter filter,
+                                                  int page, int size){
+        return withDownloadUrls(findFiles(userName, searchTerm, filter, page, size).getFiles());
+    }
+
+    /**
+     * Resolves one page of search results without presigning anything, so a caller can
+     * compare its ETag with the client's copy first.
+     */
+    public SearchPage findFiles(String userName, String searchTerm, FileSearchFilter filter, int page, int size){
+        Comparator<S3Object> order = sortOrder(filter);
+        Map<String, FileMetadataResponse> localFiles = new HashMap<>();
+        Predicate<S3Object> matchesFilter = filterPredicate(filter, localFiles);
         try {
             if (userName == null || userName.trim().isEmpty()) {
                 throw new BadRequestException("Username cannot be null or empty");
             }
-            
-            String prefix = userName + "/";
 
-            ListObjectsV2Request listObjectsV2Request = ListObjectsV2Request.builder()
-                    .bucket(s3BucketName)
-                    .prefix(prefix)
-                    .maxKeys(1000)
-                    .build();
+            localFiles.putAll(findLocalFiles(userName, searchTerm));
+            Set<String> localNames = localFiles.values().stream()
+                    .map(FileMetadataResponse::getFileName)
+                    .collect(Collectors.toSet());
 
-            ListObjectsV2Response listObjectsResponse = s3Client.listObjectsV2(listObjectsV2Request);
-
-            List<FileMetadataResponse> allFiles = listObjectsResponse.contents().stream()
-                    .filter(obj -> !obj.key().endsWith("/"))
-                    .filter(obj -> searchTerm == null || searchTerm.trim().isEmpty() ||
-                            obj.key().toLowerCase().contains(searchTerm.toLowerCase()))
-                    .map(this::mapToFileMetadata)
-                    .toList();
+            // Keys are matched and filtered as listed; only the requested page becomes DTOs.
+            // Without an order the scan stops after the page, so later S3 pages are not read.
+            boolean readsEverything = order != null || matchesFilter != null || !localFiles.isEmpty();
+            Stream<S3Object> candidates = Stream.concat(
+                    listUserObjects(userName, readsEverything).filter(object -> isListedMatch(object, searchTerm, localNames)),
+                    localFiles.values().stream().map(StorageService::asListedObject));
+            if (matchesFilter != null) {
+                candidates = candidates.filter(matchesFilter);
+            }
 
             // Apply pagination
-            int start = page * size;
-            int end = Math.min(start + size, allFiles.size());
-            
-            if (start >= allFiles.size()) {
-                return List.of();
+            long start = (long) page * size;
+            List<S3Object> pageObjects;
+            if (order == null && localFiles.isEmpty()) {
+                // Listings already come in file-name order, so the scan stops after the page
+                pageObjects = candidates.skip(start).limit(size).toList();
+            } else {
+                // Only the requested page and the ones before it need ordering
+                List<S3Object> first = firstInOrder(candidates, order != null ? order : FILE_NAME_ORDER, start + size);
+                pageObjects = start >= first.size() ? List.of() : first.subList((int) start, first.size());
             }
-            
-            return allFiles.subList(start, end).stream()
-                    .map(this::addDownloadUrl)
-                    .toList();
+
+            List<FileMetadataResponse> pageFiles = new ArrayList<>(pageObjects.size());
+            for (S3Object object : pageObjects) {
+                FileMetadataResponse local = localFiles.get(object.key());
+                pageFiles.add(local != null ? local : mapToFileMetadata(object));
+            }
+            return SearchPage.builder()
+                    .files(pageFiles)
+                    .eTag(pageETag(pageFiles))
+                    .build();
             
         } catch (Exception e) {
             log.error("Error searching files for user {} with term {}: {}", userName, searchTerm, e.getMessage());
@@ -77,18 +183,548 @@ public class StorageService {
         }
     }
 
+    /**
+     * Presigns download URLs onto the files in place. Local files already carry theirs.
+     */
+    public List<FileMetadataResponse> withDownloadUrls(List<FileMetadataResponse> files) {
+        files.forEach(this::addDownloadUrl);
+        return files;
+    }
+
+    /**
+     * Weak ETag over what identifies each file on the page. Presigned URLs in a page the
+     * client already holds expire, so the tag also changes every half URL lifetime.
+     */
+    private String pageETag(List<FileMetadataResponse> files) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        long urlPeriod = Instant.now().getEpochSecond() / Math.max(1, urlExpirySeconds / 2);
+        StringBuilder entry = new StringBuilder().append(urlPeriod).append('\n');
+        digest.update(entry.toString().getBytes(StandardCharsets.UTF_8));
+        for (FileMetadataResponse file : files) {
+            entry.setLength(0);
+            entry.append(file.getFileKey()).append('\0')
+                    .append(file.getFileSize()).append('\0')
+                    .append(file.getLastModified()).append('\0')
+                    .append(file.getContentType()).append('\0')
+                    .append(file.getDownloadUrl()).append('\n');
+            digest.update(entry.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return "W/\"" + HexFormat.of().formatHex(digest.digest(), 0, 16) + "\"";
+    }
+
+    /**
+     * Lists every matching file of the user without holding the listing in memory: S3 is
+     * read one page per prefix at a time (the next page is fetched while the current one
+     * is written) and entries are handed over in pages of at most {@value #LIST_PAGE_SIZE}.
+     * Sharded prefixes are merged on the fly, so files still come out in file-name order.
+     * Files in the spool or in packs come first and hide older S3 copies of the same name.
+     *
+     * <p>Arguments are validated here, before anything is written; S3 is only read once
+     * the returned listing is consumed.
+     */
+    public FileListing streamFiles(String userName, String searchTerm, FileSearchFilter filter, boolean withDownloadUrls) {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new BadRequestException("Username cannot be null or empty");
+        }
+        if (sortOrder(filter) != null) {
+            throw new BadRequestException("Sorting is not supported on streamed listings");
+        }
+        Map<String, FileMetadataResponse> localFiles = new HashMap<>();
+        Predicate<S3Object> matchesFilter = filterPredicate(filter, localFiles);
+        Predicate<S3Object> accepted = matchesFilter != null ? matchesFilter : object -> true;
+
+        return pageConsumer -> {
+            localFiles.putAll(findLocalFiles(userName, searchTerm));
+            Set<String> localNames = localFiles.values().stream()
+                    .map(FileMetadataResponse::getFileName)
+                    .collect(Collectors.toSet());
+            PageWriter writer = new PageWriter(pageConsumer, withDownloadUrls);
+            localFiles.values().stream()
+                    .sorted(Comparator.comparing(FileMetadataResponse::getFileName)
+                            .thenComparing(FileMetadataResponse::getFileKey))
+                    .filter(file -> accepted.test(asListedObject(file)))
+                    .forEach(writer::add);
+
+            List<S3Object> catalogued = metadataCatalog.listUser(userName);
+            if (catalogued != null) {
+                for (S3Object object : newestPerFileName(catalogued)) {
+                    FileMetadataResponse file = toStreamedFile(object, searchTerm, localNames, accepted);
+                    if (file != null) {
+                        writer.add(file);
+                    }
+                }
+                writer.flush();
+                return;
+            }
+
+            MergedListing listing = new MergedListing(userName, true, null);
+            while (listing.hasNext()) {
+                FileMetadataResponse file = toStreamedFile(listing.next(), searchTerm, localNames, accepted);
+                if (file != null) {
+                    writer.add(file);
+                }
+                // Hand over what we have before possibly waiting on the next S3 page
+                if (listing.pageEnded()) {
+                    writer.flush();
+                }
+            }
+            writer.flush();
+        };
+    }
+
+    private FileMetadataResponse toStreamedFile(S3Object object, String searchTerm, Set<String> localNames,
+                                                Predicate<S3Object> accepted) {
+        if (!isListedMatch(object, searchTerm, localNames) || !accepted.test(object)) {
+            return null;
+        }
+        return mapToFileMetadata(object);
+    }
+
+    /**
+     * Collects streamed entries into pages of at most {@value #LIST_PAGE_SIZE}.
+     */
+    private final class PageWriter {
+        private final Consumer<List<FileMetadataResponse>> pageConsumer;
+        private final boolean withDownloadUrls;
+        private List<FileMetadataResponse> page = new ArrayList<>();
+
+        private PageWriter(Consumer<List<FileMetadataResponse>> pageConsumer, boolean withDownloadUrls) {
+            this.pageConsumer = pageConsumer;
+            this.withDownloadUrls = withDownloadUrls;
+        }
+
+        void add(FileMetadataResponse file) {
+            page.add(withDownloadUrls ? addDownloadUrl(file) : file);
+            if (page.size() >= LIST_PAGE_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!page.isEmpty()) {
+                pageConsumer.accept(page);
+                page = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * Every listed object of the user across all prefixes in file-name order, read page by
+     * page through one {@link PrefixPager} per prefix. While legacy keys are still listed,
+     * only the newest copy of each file name is returned. Each raw listed object is also
+     * handed to {@code onListed}, if given.
+     */
+    private final class MergedListing implements Iterator<S3Object> {
+        private final PriorityQueue<PrefixPager> pagers;
+        private final boolean dedupe = fileKeyLayout.isLegacyFallbackEnabled();
+        private final Consumer<S3Object> onListed;
+        // Advanced on the next call, so a caller can act on a page end before waiting on S3
+        private PrefixPager pendingAdvance;
+        private boolean pageEnded;
+
+        private MergedListing(String userName, boolean prefetch, Consumer<S3Object> onListed) {
+            this.onListed = onListed;
+            List<CompletableFuture<PrefixPager>> firstPages = fileKeyLayout.listPrefixes(userName).stream()
+                    .map(prefix -> CompletableFuture.supplyAsync(() -> new PrefixPager(prefix, prefetch), listingExecutor))
+                    .toList();
+            pagers = new PriorityQueue<>(Math.max(1, firstPages.size()),
+                    Comparator.comparing(PrefixPager::current, FILE_NAME_ORDER));
+            for (CompletableFuture<PrefixPager> firstPage : firstPages) {
+                PrefixPager pager = firstPage.join();
+                if (pager.hasCurrent()) {
+                    pagers.add(pager);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            settle();
+            return !pagers.isEmpty();
+        }
+
+        @Override
+        public S3Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            PrefixPager pager = pagers.poll();
+            S3Object object = take(pager);
+            if (!dedupe) {
+                pendingAdvance = pager;
+                return object;
+            }
+            // Copies of one name come out next to each other
+            if (pager.advance()) {
+                pagers.add(pager);
+            }
+            while (!pagers.isEmpty() && fileKeyLayout.sameFileName(pagers.peek().current().key(), object.key())) {
+                PrefixPager other = pagers.poll();
+                S3Object copy = take(other);
+                object = FileKeyLayout.isNewer(copy, object) ? copy : object;
+                if (other.advance()) {
+                    pagers.add(other);
+                }
+            }
+            return object;
+        }
+
+        /**
+         * Whether the element just returned was the last of an S3 page with more to come.
+         */
+        boolean pageEnded() {
+            return pageEnded;
+        }
+
+        private S3Object take(PrefixPager pager) {
+            S3Object object = pager.current();
+            pageEnded = pager.atPageEnd();
+            if (onListed != null) {
+                onListed.accept(object);
+            }
+            return object;
+        }
+
+        private void settle() {
+            if (pendingAdvance != null) {
+                if (pendingAdvance.advance()) {
+                    pagers.add(pendingAdvance);
+                }
+                pendingAdvance = null;
+            }
+        }
+    }
+
+    /**
+     * Walks one prefix page by page. With {@code prefetch} the following page is requested
+     * as soon as the current one arrives; without it, only once the current one is used up.
+     */
+    private final class PrefixPager {
+        private final String prefix;
+        private final boolean prefetch;
+        private List<S3Object> contents;
+        private int position;
+        private String nextToken;
+        private CompletableFuture<ListObjectsV2Response> nextPage;
+
+        private PrefixPager(String prefix, boolean prefetch) {
+            this.prefix = prefix;
+            this.prefetch = prefetch;
+            load(listPrefix(prefix));
+        }
+
+        boolean hasCurrent() {
+            return position < contents.size();
+        }
+
+        S3Object current() {
+            return contents.get(position);
+        }
+
+        boolean atPageEnd() {
+            return position == contents.size() - 1 && nextToken != null;
+        }
+
+        boolean advance() {
+            position++;
+            while (!hasCurrent() && nextToken != null) {
+                load(nextPage != null ? nextPage.join() : listPrefix(prefix, nextToken));
+            }
+            return hasCurrent();
+        }
+
+        private void load(ListObjectsV2Response response) {
+            contents = response.contents();
+            position = 0;
+            String token = Boolean.TRUE.equals(response.isTruncated()) ? response.nextContinuationToken() : null;
+            nextToken = token;
+            nextPage = token == null || !prefetch ? null
+                    : CompletableFuture.supplyAsync(() -> listPrefix(prefix, token), listingExecutor);
+        }
+    }
+
+    /**
+     * Files that live outside their own S3 object (still in the write-behind spool, or
+     * packed), keyed by file key. They replace any older plain S3 copy of the same name.
+     */
+    private Map<String, FileMetadataResponse> findLocalFiles(String userName, String searchTerm) {
+        Map<String, FileMetadataResponse> local = new HashMap<>();
+        for (SpoolEntry entry : uploadSpool.pendingForUser(userName)) {
+            if (matchesSearchTerm(entry.getFileKey(), searchTerm)) {
+                local.put(entry.getFileKey(), mapToFileMetadata(entry));
+            }
+        }
+        for (PackedFile packed : smallFilePacker.listFiles(userName)) {
+            FileMetadataResponse file = mapToFileMetadata(packed);
+            if (matchesSearchTerm(file.getFileKey(), searchTerm)) {
+                local.put(file.getFileKey(), file);
+            }
+        }
+        return local;
+    }
+
+    /**
+     * A listed S3 object that is a file matching the term and not hidden by a local copy.
+     */
+    private boolean isListedMatch(S3Object object, String searchTerm, Set<String> localNames) {
+        String key = object.key();
+        return !key.endsWith("/") && matchesSearchTerm(key, searchTerm)
+                && (localNames.isEmpty() || !localNames.contains(fileKeyLayout.extractFileName(key)));
+    }
+
+    /**
+     * A local file in the shape of a listing entry, so it is filtered and ordered alongside S3.
+     */
+    private static S3Object asListedObject(FileMetadataResponse file) {
+        return S3Object.builder()
+                .key(file.getFileKey())
+                .size(file.getFileSize())
+                .lastModified(file.getLastModified())
+                .build();
+    }
+
+    /**
+     * Compares the file-name part of two keys without cutting it out of either.
+     */
+    private static int compareFileNames(String leftKey, String rightKey) {
+        int left = leftKey.lastIndexOf('/') + 1;
+        int right = rightKey.lastIndexOf('/') + 1;
+        int length = Math.min(leftKey.length() - left, rightKey.length() - right);
+        for (int i = 0; i < length; i++) {
+            int diff = leftKey.charAt(left + i) - rightKey.charAt(right + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (leftKey.length() - left) - (rightKey.length() - right);
+    }
+
+    private Comparator<S3Object> sortOrder(FileSearchFilter filter) {
+        if (filter == null || filter.getSort() == null || filter.getSort().isBlank()) {
+            return null;
+        }
+
+        Comparator<S3Object> order = switch (filter.getSort().trim().toLowerCase(Locale.ROOT)) {
+            case "name" -> (left, right) -> compareFileNames(left.key(), right.key());
+            case "size" -> Comparator.comparing(S3Object::size,
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            case "lastmodified" -> Comparator.comparing(S3Object::lastModified,
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            default -> throw new BadRequestException("Invalid sort field: " + filter.getSort()
+                    + " (expected name, size or lastModified)");
+        };
+
+        String direction = filter.getDirection() == null ? "asc" : filter.getDirection().trim().toLowerCase(Locale.ROOT);
+        if (direction.equals("desc")) {
+            order = order.reversed();
+        } else if (!direction.equals("asc")) {
+            throw new BadRequestException("Invalid sort direction: " + filter.getDirection() + " (expected asc or desc)");
+        }
+        return order.thenComparing(FILE_NAME_ORDER);
+    }
+
+    /**
+     * Filter over listing entries, run before any DTO is built. Content types of local files
+     * are looked up in {@code localFiles}, which the caller fills once it has found them.
+     */
+    private Predicate<S3Object> filterPredicate(FileSearchFilter filter, Map<String, FileMetadataResponse> localFiles) {
+        if (filter == null) {
+            return null;
+        }
+        if (filter.getMinSize() != null && filter.getMaxSize() != null && filter.getMinSize() > filter.getMaxSize()) {
+            throw new BadRequestException("minSize cannot be greater than maxSize");
+        }
+
+        List<Predicate<S3Object>> conditions = new ArrayList<>();
+        if (filter.getModifiedAfter() != null) {
+            conditions.add(object -> object.lastModified() != null && object.lastModified().isAfter(filter.getModifiedAfter()));
+        }
+        if (filter.getModifiedBefore() != null) {
+            conditions.add(object -> object.lastModified() != null && object.lastModified().isBefore(filter.getModifiedBefore()));
+        }
+        if (filter.getMinSize() != null) {
+            conditions.add(object -> object.size() != null && object.size() >= filter.getMinSize());
+        }
+        if (filter.getMaxSize() != null) {
+            conditions.add(object -> object.size() != null && object.size() <= filter.getMaxSize());
+        }
+        if (filter.getContentType() != null && !filter.getContentType().isBlank()) {
+            MediaType wanted;
+            try {
+                wanted = MediaType.parseMediaType(filter.getContentType());
+            } catch (InvalidMediaTypeException e) {
+                throw new BadRequestException("Invalid content type: " + filter.getContentType());
+            }
+            conditions.add(object -> {
+                MediaType actual = contentTypeOf(object, localFiles);
+                return actual != null && wanted.includes(actual);
+            });
+        }
+        return conditions.stream().reduce(Predicate::and).orElse(null);
+    }
+
+    /**
+     * The stored content type where one is known, otherwise a guess from the file extension,
+     * since plain S3 listings do not carry it.
+     */
+    private MediaType contentTypeOf(S3Object object, Map<String, FileMetadataResponse> localFiles) {
+        FileMetadataResponse local = localFiles.get(object.key());
+        CatalogEntry catalogued = local == null ? metadataCatalog.find(object.key()) : null;
+        String stored = local != null ? local.getContentType()
+                : catalogued != null ? catalogued.getContentType() : null;
+        if (stored != null) {
+            try {
+                return MediaType.parseMediaType(stored);
+            } catch (InvalidMediaTypeException e) {
+                return null;
+            }
+        }
+        return MediaTypeFactory.getMediaType(fileKeyLayout.extractFileName(object.key())).orElse(null);
+    }
+
+    /**
+     * The first {@code limit} files in the given order, kept in a bounded max-heap so the
+     * whole listing is never sorted.
+     */
+    private static <T> List<T> firstInOrder(Stream<T> candidates, Comparator<T> order, long limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        PriorityQueue<T> heap = new PriorityQueue<>((int) Math.min(limit, LIST_PAGE_SIZE), order.reversed());
+        candidates.forEach(candidate -> {
+            if (heap.size() < limit) {
+                heap.add(candidate);
+            } else if (order.compare(candidate, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        });
+
+        List<T> first = new ArrayList<>(heap);
+        first.sort(order);
+        return first;
+    }
+
+    /**
+     * Case-insensitive match anywhere in the logical key, compared in place rather than
+     * lower-casing every listed key.
+     */
+    private boolean matchesSearchTerm(String key, String searchTerm) {
+        if (searchTerm == null || searchTerm.trim().isEmpty()) {
+            return true;
+        }
+        int last = key.length() - searchTerm.length();
+        for (int i = fileKeyLayout.logicalKeyStart(key); i <= last; i++) {
+            if (key.regionMatches(true, i, searchTerm, 0, searchTerm.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The user's objects in file-name order, from the catalog when it covers the user and
+     * otherwise listed from S3 page by page as the stream is consumed. A listing read to
+     * the end is recorded in the catalog. {@code readsEverything} prefetches pages for
+     * callers that will consume the whole stream.
+     */
+    private Stream<S3Object> listUserObjects(String userName, boolean readsEverything) {
+        List<S3Object> catalogued = metadataCatalog.listUser(userName);
+        if (catalogued != null) {
+            return newestPerFileName(catalogued).stream();
+        }
+
+        long listedSince = metadataCatalog.currentVersion();
+        List<S3Object> listed = metadataCatalog.isEnabled() ? new ArrayList<>() : null;
+        MergedListing listing = new MergedListing(userName, readsEverything, listed != null ? listed::add : null);
+        Iterator<S3Object> recording = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                boolean more = listing.hasNext();
+                // Only a complete listing can stand in for S3 on later searches
+                if (!more && listed != null) {
+                    metadataCatalog.recordUserListing(userName, listed, listedSince);
+                }
+                return more;
+            }
+
+            @Override
+            public S3Object next() {
+                return listing.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(recording,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private List<S3Object> newestPerFileName(List<S3Object> listing) {
+        return fileKeyLayout.isLegacyFallbackEnabled() ? fileKeyLayout.newestPerFileName(listing) : listing;
+    }
+
+    private ListObjectsV2Response listPrefix(String prefix) {
+        return listPrefix(prefix, null);
+    }
+
+    private ListObjectsV2Response listPrefix(String prefix, String continuationToken) {
+        ListObjectsV2Request.Builder requestBuilder = ListObjectsV2Request.builder()
+                .bucket(s3BucketName)
+                .prefix(prefix)
+                .continuationToken(continuationToken)
+                .maxKeys(LIST_PAGE_SIZE);
+
+        // Keeps the legacy userName/ listing from picking up keys of a shard that shares its name
+        if (fileKeyLayout.isSharded()) {
+            requestBuilder.delimiter("/");
+        }
+
+        ListObjectsV2Request listObjectsV2Request = requestBuilder.build();
+        return s3ReadHedger.execute("ListObjectsV2", () -> s3Client.listObjectsV2(listObjectsV2Request));
+    }
+
     private FileMetadataResponse mapToFileMetadata(S3Object s3Object) {
-        String fileName = extractFileNameFromKey(s3Object.key());
+        String fileName = fileKeyLayout.extractFileName(s3Object.key());
+        CatalogEntry catalogued = metadataCatalog.find(s3Object.key());
 
         return FileMetadataResponse.builder()
                 .fileName(fileName)
                 .fileKey(s3Object.key())
                 .fileSize(s3Object.size())
                 .lastModified(s3Object.lastModified())
+                .contentType(catalogued != null ? catalogued.getContentType() : null)
+                .build();
+    }
+
+    private FileMetadataResponse mapToFileMetadata(SpoolEntry entry) {
+        return FileMetadataResponse.builder()
+                .fileName(entry.getFileName())
+                .fileKey(entry.getFileKey())
+                .fileSize(entry.getFileSize())
+                .lastModified(entry.getCreatedAt())
+                .contentType(entry.getContentType())
+                .downloadUrl(localDownloadUrl(entry.getUserName(), entry.getFileName()))
+                .build();
+    }
+
+    private FileMetadataResponse mapToFileMetadata(PackedFile packed) {
+        return FileMetadataResponse.builder()
+                .fileName(packed.getFileName())
+                .fileKey(fileKeyLayout.buildFileKey(packed.getUserName(), packed.getFileName()))
+                .fileSize(packed.getLength())
+                .lastModified(packed.getLastModified())
+                .contentType(packed.getContentType())
+                .downloadUrl(localDownloadUrl(packed.getUserName(), packed.getFileName()))
                 .build();
     }
 
     public FileMetadataResponse uploadFile(String userName, MultipartFile file)  {
+        UsageTracker.Reservation reservation = null;
         try {
             if (userName == null || userName.trim().isEmpty()) {
                 throw new BadRequestException("Username cannot be null or empty");
@@ -97,7 +733,30 @@ public class StorageService {
                 throw new BadRequestException("File cannot be null or empty");
             }
 
-            String key = buildFileKey(userName, file.getOriginalFilename());
+            String key = fileKeyLayout.buildFileKey(userName, file.getOriginalFilename());
+
+            // An overwrite only adds the size difference
+            Long previousSize = knownSize(userName, file.getOriginalFilename(), key);
+            long bytesDelta = file.getSize() - (previousSize != null ? previousSize : 0);
+            long filesDelta = previousSize != null ? 0 : 1;
+            reservation = usageTracker.reserve(userName, bytesDelta, filesDelta);
+
+            if (smallFilePacker.accepts(file.getSize())) {
+                uploadSpool.remove(key);
+                PackedFile packed = smallFilePacker.append(userName, file.getOriginalFilename(),
+                        file.getContentType(), file.getBytes());
+                reservation.commit();
+                return mapToFileMetadata(packed);
+            }
+            // A larger re-upload must not stay shadowed by an older packed copy
+            smallFilePacker.remove(userName, file.getOriginalFilename());
+
+            if (uploadSpool.isEnabled()) {
+                SpoolEntry entry = uploadSpool.enqueue(userName, file.getOriginalFilename(), key,
+                        file.getContentType(), file.getBytes());
+                reservation.commit();
+                return mapToFileMetadata(entry);
+            }
             
             PutObjectRequest putObjectRequest = PutObjectRequest.builder()
                     .bucket(s3BucketName)
@@ -106,7 +765,7 @@ public class StorageService {
                     .contentLength(file.getSize())
                     .build();
 
-            s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
+            PutObjectResponse putObjectResponse = s3Client.putObject(putObjectRequest, RequestBody.fromBytes(file.getBytes()));
             
             log.info("File uploaded successfully: {}", key);
             
@@ -115,16 +774,112 @@ public class StorageService {
                     .fileKey(key)
                     .fileSize(file.getSize())
                     .lastModified(java.time.Instant.now())
+                    .contentType(file.getContentType())
                     .build();
+
+            eventPublisher.publishEvent(FileChangeEvent.builder()
+                    .type(FileChangeEvent.Type.UPSERT)
+                    .fileKey(key)
+                    .fileSize(file.getSize())
+                    .lastModified(response.getLastModified())
+                    .contentType(file.getContentType())
+                    .eTag(putObjectResponse != null ? putObjectResponse.eTag() : null)
+                    .build());
+            reservation.commit();
                     
             return addDownloadUrl(response);
                     
+        } catch (QuotaExceededException e) {
+            throw e;
         } catch (Exception e) {
+            if (reservation != null) {
+                reservation.release();
+            }
             log.error("Error uploading file for user {}: {}", userName, e.getMessage());
             throw new FileUploadException("Failed to upload file , Please Try Again !!");
         }
     }
 
+    /**
+     * Confirms an object written outside {@link #uploadFile} (presigned or resumable uploads)
+     * reached S3 and returns its metadata as S3 reports it.
+     */
+    public FileMetadataResponse verifyStoredFile(String fileName, String key) {
+        HeadObjectResponse head = headUploaded(fileName, key);
+
+        log.info("Verified uploaded file: {} ({} bytes)", key, head.contentLength());
+
+        // Local copies are read before S3, so an older one would hide the new upload
+        String owner = fileKeyLayout.userName(key);
+        Long localSize = localSize(owner, fileName, key);
+        uploadSpool.remove(key);
+        smallFilePacker.remove(owner, fileName);
+
+        // The object is already replaced, so an unknown previous copy can only be recounted
+        CatalogEntry previous = metadataCatalog.find(key);
+        if (localSize != null) {
+            usageTracker.recordChange(owner, head.contentLength() - localSize, 0);
+        } else if (previous == null && !metadataCatalog.coversUser(owner)) {
+            usageTracker.invalidate(owner);
+        } else {
+            usageTracker.recordChange(owner, head.contentLength() - (previous != null ? previous.getFileSize() : 0),
+                    previous != null ? 0 : 1);
+        }
+
+        eventPublisher.publishEvent(FileChangeEvent.builder()
+                .type(FileChangeEvent.Type.UPSERT)
+                .fileKey(key)
+                .fileSize(head.contentLength())
+                .lastModified(head.lastModified())
+                .contentType(head.contentType())
+                .eTag(head.eTag())
+                .build());
+
+        return toUploadedFile(fileName, key, head);
+    }
+
+    /**
+     * Metadata of an upload {@link #verifyStoredFile} has already confirmed, without
+     * recording it again.
+     */
+    public FileMetadataResponse describeStoredFile(String fileName, String key) {
+        return toUploadedFile(fileName, key, headUploaded(fileName, key));
+    }
+
+    private HeadObjectResponse headUploaded(String fileName, String key) {
+        HeadObjectRequest headRequest = HeadObjectRequest.builder()
+                .bucket(s3BucketName)
+                .key(key)
+                .build();
+        try {
+            return s3ReadHedger.execute("HeadObject", () -> s3Client.headObject(headRequest));
+        } catch (NoSuchKeyException e) {
+            throw new BadRequestException("Uploaded file not found: " + fileName);
+        }
+    }
+
+    private FileMetadataResponse toUploadedFile(String fileName, String key, HeadObjectResponse head) {
+        FileMetadataResponse response = FileMetadataResponse.builder()
+                .fileName(fileName)
+                .fileKey(key)
+                .fileSize(head.contentLength())
+                .lastModified(head.lastModified())
+                .contentType(head.contentType())
+                .build();
+
+        return addDownloadUrl(response);
+    }
+
+    /**
+     * Quota check for uploads that go straight to S3 (presigned or resumable) before any
+     * byte is sent. The counters are updated once {@link #verifyStoredFile} sees the object.
+     */
+    public void checkUploadQuota(String userName, String fileName, long fileSize) {
+        Long previousSize = knownSize(userName, fileName, fileKeyLayout.buildFileKey(userName, fileName));
+        usageTracker.checkQuota(userName, fileSize - (previousSize != null ? previousSize : 0),
+                previousSize != null ? 0 : 1);
+    }
+
     public String generateDownloadUrl(String fileKey) {
         try {
             GetObjectRequest getObjectRequest = GetObjectRequest.builder()
@@ -145,20 +900,66 @@ public class StorageService {
         }
     }
 
+    public FileDownload openDownload(String userName, String fileName) {
+        if (userName == null || userName.trim().isEmpty()) {
+            throw new BadRequestException("Username cannot be null or empty");
+        }
+        if (fileName == null || fileName.trim().isEmpty()) {
+            throw new BadRequestException("Filename cannot be null or empty");
+        }
+
+        PackedFile packed = smallFilePacker.find(userName, fileName);
+        if (packed != null) {
+            byte[] content = smallFilePacker.read(packed);
+            return FileDownload.builder()
+                    .fileName(fileName)
+                    .contentType(packed.getContentType())
+                    .fileSize((long) content.length)
+                    .content(new ByteArrayInputStream(content))
+                    .build();
+        }
+
+        SpoolEntry spooled = uploadSpool.find(fileKeyLayout.buildFileKey(userName, fileName));
+        if (spooled != null) {
+            try {
+                return FileDownload.builder()
+                        .fileName(fileName)
+                        .contentType(spooled.getContentType())
+                        .fileSize(spooled.getFileSize())
+                        .content(uploadSpool.openContent(spooled))
+                        .build();
+            } catch (NoSuchFileException e) {
+                log.debug("Spooled file {} was flushed while opening it, serving from S3", spooled.getFileKey());
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read spooled file", e);
+            }
+        }
+
+        String key = resolveExistingKey(userName, fileName);
+        if (key == null) {
+            throw new BadRequestException("File not found: " + fileName);
+        }
+        return FileDownload.builder()
+                .fileName(fileName)
+                .redirectUrl(generateDownloadUrl(key))
+                .build();
+    }
+
+    private String localDownloadUrl(String userName, String fileName) {
+        return DOWNLOAD_PATH + URLEncoder.encode(fileName, StandardCharsets.UTF_8).replace("+", "%20")
+                + "?userName=" + URLEncoder.encode(userName, StandardCharsets.UTF_8);
+    }
+
     private FileMetadataResponse addDownloadUrl(FileMetadataResponse fileMetadata) {
+        if (fileMetadata.getDownloadUrl() != null) {
+            return fileMetadata;
+        }
         try {
-            String downloadUrl = generateDownloadUrl(fileMetadata.getFileKey());
-            return FileMetadataResponse.builder()
-                    .fileName(fileMetadata.getFileName())
-                    .fileKey(fileMetadata.getFileKey())
-                    .fileSize(fileMetadata.getFileSize())
-                    .lastModified(fileMetadata.getLastModified())
-                    .downloadUrl(downloadUrl)
-                    .build();
+            fileMetadata.setDownloadUrl(generateDownloadUrl(fileMetadata.getFileKey()));
         } catch (Exception e) {
             log.warn("Could not generate download URL for file {}: {}", fileMetadata.getFileKey(), e.getMessage());
-            return fileMetadata;
         }
+        return fileMetadata;
     }
 
     public void deleteFile(String userName, String fileName) {
@@ -170,19 +971,33 @@ public class StorageService {
                 throw new BadRequestException("Filename cannot be null or empty");
             }
 
-            String key = buildFileKey(userName, fileName);
+            // A local copy shadows any S3 copy, so its size is what usage counted
+            Long localSize = localSize(userName, fileName, fileKeyLayout.buildFileKey(userName, fileName));
+            boolean removedFromSpool = uploadSpool.remove(fileKeyLayout.buildFileKey(userName, fileName));
+            boolean removedFromPack = smallFilePacker.remove(userName, fileName);
+            // A name left at both the legacy and the sharded key is removed from both
+            List<StoredObject> copies = resolveAllExisting(userName, fileName);
 
-            if (!fileExists(key)) {
+            if (copies.isEmpty()) {
+                if (removedFromSpool || removedFromPack) {
+                    usageTracker.recordChange(userName, localSize != null ? -localSize : 0, -1);
+                    log.info("File deleted from local spool or pack: {}", fileName);
+                    return;
+                }
                 throw new BadRequestException("File not found: " + fileName);
             }
             
-            DeleteObjectRequest deleteRequest = DeleteObjectRequest.builder()
-                    .bucket(s3BucketName)
-                    .key(key)
-                    .build();
+            for (StoredObject stored : copies) {
+                DeleteObjectRequest deleteRequest = DeleteObjectRequest.builder()
+                        .bucket(s3BucketName)
+                        .key(stored.key())
+                        .build();
 
-            s3Client.deleteObject(deleteRequest);
-            log.info("File deleted successfully: {}", key);
+                s3Client.deleteObject(deleteRequest);
+                eventPublisher.publishEvent(FileChangeEvent.deleted(stored.key()));
+                log.info("File deleted successfully: {}", stored.key());
+            }
+            usageTracker.recordChange(userName, -(localSize != null ? localSize : newest(copies).size()), -1);
 
         } catch (BadRequestException e) {
             throw e;
@@ -193,28 +1008,89 @@ public class StorageService {
     }
 
     public boolean fileExists(String fileKey) {
+        return headIfExists(fileKey) != null;
+    }
+
+    private HeadObjectResponse headIfExists(String fileKey) {
         try {
             HeadObjectRequest headRequest = HeadObjectRequest.builder()
                     .bucket(s3BucketName)
                     .key(fileKey)
                     .build();
 
-            s3Client.headObject(headRequest);
-            return true;
+            return s3ReadHedger.execute("HeadObject", () -> s3Client.headObject(headRequest));
         } catch (NoSuchKeyException e) {
-            return false;
+            return null;
         } catch (Exception e) {
             log.error("Error checking file existence for key {}: {}", fileKey, e.getMessage());
-            return false;
+            return null;
         }
     }
 
-    private String extractFileNameFromKey(String key) {
-        return key.substring(key.lastIndexOf("/") + 1);
+    private String resolveExistingKey(String userName, String fileName) {
+        StoredObject stored = resolveExisting(userName, fileName);
+        return stored != null ? stored.key() : null;
+    }
+
+    /**
+     * The copy search shows for the name: the newer one when the name exists at both the
+     * legacy and the sharded key.
+     */
+    private StoredObject resolveExisting(String userName, String fileName) {
+        List<StoredObject> copies = resolveAllExisting(userName, fileName);
+        return copies.isEmpty() ? null : newest(copies);
+    }
+
+    private List<StoredObject> resolveAllExisting(String userName, String fileName) {
+        List<StoredObject> copies = new ArrayList<>(2);
+        addIfExists(copies, fileKeyLayout.buildFileKey(userName, fileName));
+        if (fileKeyLayout.isLegacyFallbackEnabled()) {
+            addIfExists(copies, fileKeyLayout.legacyKey(userName, fileName));
+        }
+        return copies;
+    }
+
+    private void addIfExists(List<StoredObject> copies, String key) {
+        HeadObjectResponse head = headIfExists(key);
+        if (head != null) {
+            copies.add(new StoredObject(key, head.contentLength() != null ? head.contentLength() : 0,
+                    head.lastModified()));
+        }
+    }
+
+    private static StoredObject newest(List<StoredObject> copies) {
+        return copies.stream()
+                .max(Comparator.comparing(StoredObject::lastModified, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .orElseThrow();
+    }
+
+    private Long localSize(String userName, String fileName, String key) {
+        PackedFile packed = smallFilePacker.find(userName, fileName);
+        if (packed != null) {
+            return packed.getLength();
+        }
+        SpoolEntry spooled = uploadSpool.find(key);
+        return spooled != null ? spooled.getFileSize() : null;
+    }
+
+    /**
+     * Size of the copy a search currently shows for the file, or null when there is none.
+     * S3 is only asked when neither a local copy nor a catalog covering the user answers.
+     */
+    private Long knownSize(String userName, String fileName, String key) {
+        Long local = localSize(userName, fileName, key);
+        if (local != null) {
+            return local;
+        }
+        CatalogEntry catalogued = metadataCatalog.find(key);
+        if (catalogued != null || metadataCatalog.coversUser(userName)) {
+            return catalogued != null ? catalogued.getFileSize() : null;
+        }
+        StoredObject stored = resolveExisting(userName, fileName);
+        return stored != null ? stored.size() : null;
     }
 
-    private String buildFileKey(String userName, String fileName) {
-        return userName + "/" + fileName;
+    private record StoredObject(String key, long size, Instant lastModified) {
     }
 
 }
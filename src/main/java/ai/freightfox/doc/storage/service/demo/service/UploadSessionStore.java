@@ -0,0 +1,94 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.model.UploadSession;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps resumable upload sessions in memory and mirrors each one to a JSON file, written
+ * via an atomic rename, so sessions survive a restart. The files live under the app data
+ * directory rather than the temp directory, which many hosts clear on reboot.
+ */
+@Component
+@Slf4j
+public class UploadSessionStore {
+
+    private static final Pattern SESSION_ID = Pattern.compile("[0-9a-f\\-]{36}");
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.upload.sessions.dir:${app.data.dir:${user.home}/.ffox-doc-storage}/upload-sessions}")
+    private String sessionsDir;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    private Path directory;
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Paths.get(sessionsDir);
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".json")).toList()) {
+                try {
+                    UploadSession session = objectMapper.readValue(file.toFile(), UploadSession.class);
+                    sessions.put(session.getSessionId(), session);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable upload session file {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        log.info("Loaded {} upload sessions from {}", sessions.size(), directory);
+    }
+
+    public UploadSession get(String sessionId) {
+        if (sessionId == null || !SESSION_ID.matcher(sessionId).matches()) {
+            return null;
+        }
+        return sessions.get(sessionId);
+    }
+
+    public Collection<UploadSession> all() {
+        return List.copyOf(sessions.values());
+    }
+
+    /**
+     * Persists the session. Callers mutating an existing session must hold its monitor.
+     */
+    public void save(UploadSession session) {
+        Path target = directory.resolve(session.getSessionId() + ".json");
+        Path temp = directory.resolve(session.getSessionId() + ".json.tmp");
+        try {
+            objectMapper.writeValue(temp.toFile(), session);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist upload session " + session.getSessionId(), e);
+        }
+        sessions.put(session.getSessionId(), session);
+    }
+
+    public void remove(String sessionId) {
+        sessions.remove(sessionId);
+        try {
+            Files.deleteIfExists(directory.resolve(sessionId + ".json"));
+        } catch (IOException e) {
+            log.warn("Could not delete upload session file for {}: {}", sessionId, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
+import ai.freightfox.doc.storage.service.demo.model.SpoolEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind spool for uploads. A file is fsync'd to local disk together with a JSON
+ * journal record and acknowledged; a background flusher then pushes it to S3 with bounded
+ * concurrency and exponential-backoff retries. Journal records left on disk after a crash
+ * are replayed at startup.
+ *
+ * <p>Only the newest upload per key is kept pending, and a key is never flushed while an
+ * older version of it is still in flight, so S3 always ends up with the latest bytes.
+ *
+ * <p>Until it is flushed, a spooled file exists only on the replica that accepted it: its
+ * download URL points back at this service, and another replica answers "file not found"
+ * for it. Deployments with more than one replica need sticky routing per user while the
+ * spool is enabled.
+ */
+@Component
+@Slf4j
+public class UploadSpool {
+
+    private static final long MAX_BACKOFF_MS = 60_000;
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${app.upload.spool.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.upload.spool.dir:${app.data.dir:${user.home}/.ffox-doc-storage}/upload-spool}")
+    private String spoolDir;
+
+    @Value("${app.upload.spool.flush-concurrency:4}")
+    private int flushConcurrency;
+
+    @Value("${app.upload.spool.batch-size:32}")
+    private int batchSize;
+
+    @Value("${app.upload.spool.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Value("${aws.s3.bucket.name}")
+    private String s3BucketName;
+
+    // Latest pending entry per file key
+    private final Map<String, SpoolEntry> pending = new ConcurrentHashMap<>();
+    private final Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+
+    private Path directory;
+    private ExecutorService flushExecutor;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directory = Paths.get(spoolDir);
+        Files.createDirectories(directory);
+        flushExecutor = Executors.newFixedThreadPool(flushConcurrency);
+        replay();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public SpoolEntry enqueue(String userName, String fileName, String fileKey, String contentType, byte[] content) {
+        SpoolEntry entry = new SpoolEntry();
+        entry.setId(UUID.randomUUID().toString());
+        entry.setUserName(userName);
+        entry.setFileName(fileName);
+        entry.setFileKey(fileKey);
+        entry.setContentType(contentType);
+        entry.setFileSize(content.length);
+        entry.setCreatedAt(Instant.now());
+        entry.setNextAttemptAt(entry.getCreatedAt());
+
+        try {
+            writeDurably(dataPath(entry), content);
+            Path journalTemp = directory.resolve(entry.getId() + ".json.tmp");
+            writeDurably(journalTemp, objectMapper.writeValueAsBytes(entry));
+            Files.move(journalTemp, journalPath(entry), StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+        } catch (IOException e) {
+            deleteFiles(entry);
+            throw new UncheckedIOException("Failed to spool upload for " + fileKey, e);
+        }
+
+        SpoolEntry superseded = pending.put(fileKey, entry);
+        if (superseded != null && !inFlightKeys.contains(fileKey)) {
+            deleteFiles(superseded);
+        }
+        log.info("Spooled upload {} ({} bytes) as {}", fileKey, content.length, entry.getId());
+        return entry;
+    }
+
+    public SpoolEntry find(String fileKey) {
+        return enabled ? pending.get(fileKey) : null;
+    }
+
+    public List<SpoolEntry> pendingForUser(String userName) {
+        if (!enabled || pending.isEmpty()) {
+            return List.of();
+        }
+        return pending.values().stream()
+                .filter(entry -> entry.getUserName().equals(userName))
+                .toList();
+    }
+
+    public InputStream openContent(SpoolEntry entry) throws IOException {
+        return Files.newInputStream(dataPath(entry));
+    }
+
+    /**
+     * Drops a pending upload. If it is being flushed right now, the flusher removes the
+     * object from S3 again once its PUT finishes.
+     */
+    public boolean remove(String fileKey) {
+        SpoolEntry entry = enabled ? pending.remove(fileKey) : null;
+        if (entry == null) {
+            return false;
+        }
+        entry.setDeleted(true);
+        if (!inFlightKeys.contains(fileKey)) {
+            deleteFiles(entry);
+        }
+        return true;
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Hands due entries to the flush pool and returns without waiting for them, so the
+     * shared scheduler thread is never held by S3 PUTs. Failed flushes are logged and
+     * retried by {@link #flush}.
+     */
+    @Scheduled(fixedDelayString = "${app.upload.spool.flush-interval-ms:500}")
+    public void flushPending() {
+        startFlush();
+    }
+
+    /**
+     * One flush round. At most {@code batch-size} uploads are in flight at once; the
+     * returned future completes when this round's flushes have.
+     */
+    CompletableFuture<Void> startFlush() {
+        int capacity = batchSize - inFlightKeys.size();
+        if (!enabled || pending.isEmpty() || capacity <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Instant now = Instant.now();
+        List<SpoolEntry> batch = pending.values().stream()
+                .filter(entry -> !entry.getNextAttemptAt().isAfter(now))
+                .filter(entry -> !inFlightKeys.contains(entry.getFileKey()))
+                .sorted(Comparator.comparing(SpoolEntry::getCreatedAt))
+                .limit(capacity)
+                .toList();
+
+        List<CompletableFuture<Void>> flushes = new ArrayList<>(batch.size());
+        for (SpoolEntry entry : batch) {
+            if (!inFlightKeys.add(entry.getFileKey())) {
+                continue;
+            }
+            try {
+                flushes.add(CompletableFuture.runAsync(() -> flush(entry), flushExecutor));
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the journal replays the entry on the next start
+                inFlightKeys.remove(entry.getFileKey());
+            }
+        }
+        return CompletableFuture.allOf(flushes.toArray(CompletableFuture[]::new));
+    }
+
+    private void flush(SpoolEntry entry) {
+        try {
+            PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                    .bucket(s3BucketName)
+                    .key(entry.getFileKey())
+                    .contentType(entry.getContentType())
+                    .contentLength(entry.getFileSize())
+                    .build();
+
+            PutObjectResponse putObjectResponse = s3Client.putObject(putObjectRequest, RequestBody.fromFile(dataPath(entry)));
+
+            if (entry.isDeleted()) {
+                s3Client.deleteObject(DeleteObjectRequest.builder().bucket(s3BucketName).key(entry.getFileKey()).build());
+                eventPublisher.publishEvent(FileChangeEvent.deleted(entry.getFileKey()));
+            } else {
+                eventPublisher.publishEvent(FileChangeEvent.builder()
+                        .type(FileChangeEvent.Type.UPSERT)
+                        .fileKey(entry.getFileKey())
+                        .fileSize(entry.getFileSize())
+                        .lastModified(Instant.now())
+                        .contentType(entry.getContentType())
+                        .eTag(putObjectResponse != null ? putObjectResponse.eTag() : null)
+                        .build());
+            }
+            pending.remove(entry.getFileKey(), entry);
+            deleteFiles(entry);
+            log.info("Flushed spooled upload {} to S3", entry.getFileKey());
+        } catch (Exception e) {
+            entry.setAttempts(entry.getAttempts() + 1);
+            long backoffMs = Math.min(MAX_BACKOFF_MS, retryBackoffMs << Math.min(entry.getAttempts() - 1, 16));
+            entry.setNextAttemptAt(Instant.now().plus(Duration.ofMillis(backoffMs)));
+            log.warn("Failed to flush spooled upload {} (attempt {}), retrying in {} ms: {}",
+                    entry.getFileKey(), entry.getAttempts(), backoffMs, e.getMessage());
+        } finally {
+            inFlightKeys.remove(entry.getFileKey());
+            // Superseded or deleted while in flight: nothing will retry this version
+            if (pending.get(entry.getFileKey()) != entry) {
+                deleteFiles(entry);
+            }
+        }
+    }
+
+    private void replay() throws IOException {
+        List<SpoolEntry> recovered = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".json.tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(".json")) {
+                    try {
+                        recovered.add(objectMapper.readValue(file.toFile(), SpoolEntry.class));
+                    } catch (IOException e) {
+                        log.warn("Skipping unreadable spool journal {}: {}", file, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        recovered.sort(Comparator.comparing(SpoolEntry::getCreatedAt));
+        for (SpoolEntry entry : recovered) {
+            if (!Files.exists(dataPath(entry))) {
+                log.warn("Spool journal {} has no data file, dropping it", entry.getId());
+                deleteFiles(entry);
+                continue;
+            }
+            entry.setNextAttemptAt(Instant.now());
+            SpoolEntry superseded = pending.put(entry.getFileKey(), entry);
+            if (superseded != null) {
+                deleteFiles(superseded);
+            }
+        }
+
+        // Data files whose journal record was never written belong to unacknowledged uploads
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.toString().endsWith(".bin")).toList()) {
+                String id = file.getFileName().toString().replace(".bin", "");
+                if (!Files.exists(directory.resolve(id + ".json"))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            log.info("Replayed {} spooled uploads from {}", pending.size(), directory);
+        }
+    }
+
+    private void writeDurably(Path path, byte[] content) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform allows opening a directory; the file fsyncs still hold
+            log.debug("Could not fsync spool directory: {}", e.getMessage());
+        }
+    }
+
+    private void deleteFiles(SpoolEntry entry) {
+        try {
+            Files.deleteIfExists(journalPath(entry));
+            Files.deleteIfExists(dataPath(entry));
+        } catch (IOException e) {
+            log.warn("Could not delete spool files for {}: {}", entry.getId(), e.getMessage());
+        }
+    }
+
+    private Path dataPath(SpoolEntry entry) {
+        return directory.resolve(entry.getId() + ".bin");
+    }
+
+    private Path journalPath(SpoolEntry entry) {
+        return directory.resolve(entry.getId() + ".json");
+    }
+}
@@ -0,0 +1,381 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.dto.response.UsageResponse;
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.QuotaExceededException;
+import ai.freightfox.doc.storage.service.demo.model.PackedFile;
+import ai.freightfox.doc.storage.service.demo.model.SpoolEntry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Per-user storage usage (bytes and file count) kept as {@link LongAdder} counters that
+ * uploads and deletes adjust as they happen, so reading usage or checking a quota costs no
+ * S3 call. A user's counters are loaded by one listing scan the first time they are
+ * needed and re-scanned every {@code app.usage.reconcile-interval-ms} to correct drift,
+ * such as presigned overwrites whose previous size was not known or changes made by
+ * other instances. Uploads through this instance reserve their change before storing it
+ * (see {@link #reserve}), so concurrent uploads cannot overshoot a quota together.
+ *
+ * <p>Changes relayed from other instances cannot be applied as deltas: the previous size
+ * is unknown here. They mark the user stale instead, and the next read recounts it, at
+ * most once per {@code app.usage.remote-refresh-interval-ms}. An SQS feed also echoes this
+ * instance's own writes; those are recognised by key and ETag for
+ * {@code app.usage.echo-window-ms} and skipped, as they are counted already.
+ *
+ * <p>Usage follows what search shows: one copy per file name, local spooled or packed
+ * copies taking precedence over S3.
+ */
+@Component
+@Slf4j
+public class UsageTracker {
+
+    @Autowired
+    private S3Client s3Client;
+
+    @Autowired
+    private S3ReadHedger s3ReadHedger;
+
+    @Autowired
+    private FileKeyLayout fileKeyLayout;
+
+    @Autowired
+    private UploadSpool uploadSpool;
+
+    @Autowired
+    private SmallFilePacker smallFilePacker;
+
+    @Autowired
+    private MetadataCatalog metadataCatalog;
+
+    @Value("${app.usage.quota.max-bytes:0}")
+    private long maxBytes;
+
+    @Value("${app.usage.quota.max-files:0}")
+    private long maxFiles;
+
+    @Value("${app.usage.remote-refresh-interval-ms:5000}")
+    private long remoteRefreshIntervalMs;
+
+    @Value("${app.usage.echo-window-ms:300000}")
+    private long echoWindowMs;
+
+    @Value("${aws.s3.bucket.name}")
+    private String s3BucketName;
+
+    private final Map<String, UserUsage> users = new ConcurrentHashMap<>();
+
+    // Latest change this instance made per key, to recognise its echo from the relay
+    private final Map<String, AppliedChange> appliedChanges = new ConcurrentHashMap<>();
+
+    public UsageResponse getUsage(String userName) {
+        UserUsage usage = loaded(userName);
+        return UsageResponse.builder()
+                .userName(userName)
+                .totalBytes(usage.bytes.sum())
+                .fileCount(usage.files.sum())
+                .quotaBytes(maxBytes)
+                .quotaFiles(maxFiles)
+                .lastReconciledAt(usage.reconciledAt)
+                .build();
+    }
+
+    /**
+     * Rejects a change that would take the user past a quota. Free when no quota is set.
+     */
+    public void checkQuota(String userName, long bytesDelta, long filesDelta) {
+        if (maxBytes <= 0 && maxFiles <= 0) {
+            return;
+        }
+        check(loaded(userName), bytesDelta, filesDelta);
+    }
+
+    /**
+     * Checks a change against the quotas and holds it until the upload making it finishes,
+     * in one step under the user's lock, so concurrent uploads cannot each pass a check
+     * that only one of them fits. The caller must {@link Reservation#commit} or
+     * {@link Reservation#release} the result.
+     */
+    public Reservation reserve(String userName, long bytesDelta, long filesDelta) {
+        if (maxBytes <= 0 && maxFiles <= 0) {
+            return new Reservation(userName, null, bytesDelta, filesDelta);
+        }
+        UserUsage usage = loaded(userName);
+        synchronized (usage) {
+            check(usage, bytesDelta, filesDelta);
+            // Only growth is held; a shrinking change frees nothing until it is done
+            usage.reservedBytes.add(Math.max(0, bytesDelta));
+            usage.reservedFiles.add(Math.max(0, filesDelta));
+        }
+        return new Reservation(userName, usage, bytesDelta, filesDelta);
+    }
+
+    /**
+     * Applies a change to a user whose counters are loaded. Users not loaded yet pick the
+     * change up from their first scan.
+     */
+    public void recordChange(String userName, long bytesDelta, long filesDelta) {
+        UserUsage usage = users.get(userName);
+        if (usage != null) {
+            usage.bytes.add(bytesDelta);
+            usage.files.add(filesDelta);
+        }
+    }
+
+    /**
+     * Makes the next read recount the user, for changes whose effect on usage is unknown
+     * here.
+     */
+    public void invalidate(String userName) {
+        UserUsage usage = users.get(userName);
+        if (usage != null) {
+            usage.stale = true;
+        }
+    }
+
+    @EventListener
+    public void onFileChange(FileChangeEvent event) {
+        if (event.getFileKey() == null) {
+            return;
+        }
+        // Local changes are recorded by the code making them
+        if (event.getOrigin() == null) {
+            appliedChanges.put(event.getFileKey(), new AppliedChange(event.getType(), event.getETag(), Instant.now()));
+            return;
+        }
+        if (isEcho(event)) {
+            return;
+        }
+        String packOwner = smallFilePacker.indexOwner(event.getFileKey());
+        if (packOwner == null && (smallFilePacker.isInternalKey(event.getFileKey()) || !event.getFileKey().contains("/"))) {
+            return;
+        }
+        UserUsage usage = users.get(packOwner != null ? packOwner : fileKeyLayout.userName(event.getFileKey()));
+        if (usage != null) {
+            usage.stale = true;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.usage.echo-window-ms:300000}")
+    public void forgetAppliedChanges() {
+        Instant cutoff = Instant.now().minusMillis(echoWindowMs);
+        appliedChanges.values().removeIf(applied -> applied.at().isBefore(cutoff));
+    }
+
+    @Scheduled(fixedDelayString = "${app.usage.reconcile-interval-ms:3600000}")
+    public void reconcileAll() {
+        for (String userName : List.copyOf(users.keySet())) {
+            UserUsage usage = users.get(userName);
+            try {
+                synchronized (usage) {
+                    reconcile(usage);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to reconcile storage usage for user {}: {}", userName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Whether a relayed event only reports a change this instance made and counted itself.
+     * Writes must match by ETag; deletes carry none, so the key and type have to do.
+     */
+    private boolean isEcho(FileChangeEvent event) {
+        AppliedChange applied = appliedChanges.get(event.getFileKey());
+        if (applied == null || applied.type() != event.getType()
+                || applied.at().isBefore(Instant.now().minusMillis(echoWindowMs))) {
+            return false;
+        }
+        if (event.getType() != FileChangeEvent.Type.DELETE
+                && (applied.eTag() == null || !applied.eTag().equals(event.getETag()))) {
+            return false;
+        }
+        return appliedChanges.remove(event.getFileKey(), applied);
+    }
+
+    private void check(UserUsage usage, long bytesDelta, long filesDelta) {
+        long bytes = usage.bytes.sum() + usage.reservedBytes.sum();
+        if (maxBytes > 0 && bytesDelta > 0 && bytes + bytesDelta > maxBytes) {
+            throw new QuotaExceededException("Storage quota of " + maxBytes + " bytes exceeded for user "
+                    + usage.userName);
+        }
+        if (maxFiles > 0 && filesDelta > 0 && usage.files.sum() + usage.reservedFiles.sum() + filesDelta > maxFiles) {
+            throw new QuotaExceededException("File quota of " + maxFiles + " files exceeded for user "
+                    + usage.userName);
+        }
+    }
+
+    private UserUsage loaded(String userName) {
+        UserUsage usage = users.computeIfAbsent(userName, UserUsage::new);
+        if (needsRecount(usage)) {
+            synchronized (usage) {
+                if (needsRecount(usage)) {
+                    reconcile(usage);
+                }
+            }
+        }
+        return usage;
+    }
+
+    private boolean needsRecount(UserUsage usage) {
+        Instant reconciledAt = usage.reconciledAt;
+        return reconciledAt == null || usage.stale
+                && reconciledAt.isBefore(Instant.now().minus(Duration.ofMillis(remoteRefreshIntervalMs)));
+    }
+
+    /**
+     * Recounts the user and moves the counters to the scanned totals. Changes recorded
+     * while the scan ran are kept on top of it; the scan may or may not have seen them,
+     * and the next run settles the difference. Callers hold the monitor of usage.
+     */
+    private void reconcile(UserUsage usage) {
+        usage.stale = false;
+        long bytesBefore = usage.bytes.sum();
+        long filesBefore = usage.files.sum();
+
+        Map<String, Long> localSizes = new HashMap<>();
+        for (SpoolEntry entry : uploadSpool.pendingForUser(usage.userName)) {
+            localSizes.put(entry.getFileName(), entry.getFileSize());
+        }
+        for (PackedFile packed : smallFilePacker.listFiles(usage.userName)) {
+            localSizes.put(packed.getFileName(), packed.getLength());
+        }
+
+        // A name at both its legacy and sharded key counts once, as its newest copy
+        Map<String, S3Object> newestInS3 = new HashMap<>();
+        scanS3(usage.userName, object -> {
+            String fileName = fileKeyLayout.extractFileName(object.key());
+            if (!object.key().endsWith("/") && !localSizes.containsKey(fileName)) {
+                newestInS3.merge(fileName, object, (current, candidate) ->
+                        FileKeyLayout.isNewer(candidate, current) ? candidate : current);
+            }
+        });
+
+        long[] totals = {0, 0};
+        localSizes.values().forEach(size -> {
+            totals[0] += size;
+            totals[1]++;
+        });
+        newestInS3.values().forEach(object -> {
+            totals[0] += object.size() != null ? object.size() : 0;
+            totals[1]++;
+        });
+
+        usage.bytes.add(totals[0] - bytesBefore);
+        usage.files.add(totals[1] - filesBefore);
+        Instant previous = usage.reconciledAt;
+        usage.reconciledAt = Instant.now();
+        if (previous != null && (totals[0] != bytesBefore || totals[1] != filesBefore)) {
+            log.info("Reconciled storage usage for user {}: {} bytes in {} files (counters were {} bytes in {} files)",
+                    usage.userName, totals[0], totals[1], bytesBefore, filesBefore);
+        }
+    }
+
+    private void scanS3(String userName, Consumer<S3Object> visitor) {
+        List<S3Object> catalogued = metadataCatalog.listUser(userName);
+        if (catalogued != null) {
+            catalogued.forEach(visitor);
+            return;
+        }
+
+        for (String prefix : fileKeyLayout.listPrefixes(userName)) {
+            String continuationToken = null;
+            do {
+                ListObjectsV2Request.Builder requestBuilder = ListObjectsV2Request.builder()
+                        .bucket(s3BucketName)
+                        .prefix(prefix)
+                        .continuationToken(continuationToken);
+                if (fileKeyLayout.isSharded()) {
+                    requestBuilder.delimiter("/");
+                }
+                ListObjectsV2Request listRequest = requestBuilder.build();
+                ListObjectsV2Response listResponse = s3ReadHedger.execute("ListObjectsV2",
+                        () -> s3Client.listObjectsV2(listRequest));
+                listResponse.contents().forEach(visitor);
+                continuationToken = Boolean.TRUE.equals(listResponse.isTruncated())
+                        ? listResponse.nextContinuationToken() : null;
+            } while (continuationToken != null);
+        }
+    }
+
+    /**
+     * A change held against the quotas by {@link #reserve}. Reservations are kept apart
+     * from the counters, so a reconciliation running meanwhile does not drop them.
+     */
+    public final class Reservation {
+        private final String userName;
+        private final UserUsage usage;
+        private final long bytesDelta;
+        private final long filesDelta;
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        private Reservation(String userName, UserUsage usage, long bytesDelta, long filesDelta) {
+            this.userName = userName;
+            this.usage = usage;
+            this.bytesDelta = bytesDelta;
+            this.filesDelta = filesDelta;
+        }
+
+        /**
+         * Records the change once the upload is stored. Later calls do nothing.
+         */
+        public void commit() {
+            if (settled.compareAndSet(false, true)) {
+                // Counted before the hold is dropped, so usage is never briefly understated
+                recordChange(userName, bytesDelta, filesDelta);
+                unhold();
+            }
+        }
+
+        /**
+         * Hands the reservation back after a failed upload. Does nothing once committed.
+         */
+        public void release() {
+            if (settled.compareAndSet(false, true)) {
+                unhold();
+            }
+        }
+
+        private void unhold() {
+            if (usage != null) {
+                usage.reservedBytes.add(-Math.max(0, bytesDelta));
+                usage.reservedFiles.add(-Math.max(0, filesDelta));
+            }
+        }
+    }
+
+    private record AppliedChange(FileChangeEvent.Type type, String eTag, Instant at) {
+    }
+
+    private static final class UserUsage {
+        private final String userName;
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder files = new LongAdder();
+        private final LongAdder reservedBytes = new LongAdder();
+        private final LongAdder reservedFiles = new LongAdder();
+        private volatile Instant reconciledAt;
+        private volatile boolean stale;
+
+        private UserUsage(String userName) {
+            this.userName = userName;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ai.freightfox.doc.storage.service.demo.controller;
+
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.RateLimitExceededException;
+import ai.freightfox.doc.storage.service.demo.service.RateLimiter;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UploadRateLimitFilterTest {
+
+    private RateLimiter rateLimiter;
+    private HandlerExceptionResolver handlerExceptionResolver;
+    private UploadRateLimitFilter filter;
+    private FilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = mock(RateLimiter.class);
+        handlerExceptionResolver = mock(HandlerExceptionResolver.class);
+        chain = mock(FilterChain.class);
+        filter = new UploadRateLimitFilter();
+        ReflectionTestUtils.setField(filter, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(filter, "handlerExceptionResolver", handlerExceptionResolver);
+    }
+
+    // Test an upload is charged its Content-Length for the user in the query string and marked as charged
+    @Test
+    void doFilter_WithContentLength_ChargesBeforeBodyIsRead() throws Exception {
+        MockHttpServletRequest request = uploadRequest("john.doe", 2048);
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(rateLimiter).acquire("john.doe", RateLimiter.Operation.UPLOAD_BYTES, 2048L);
+        assertEquals(Boolean.TRUE, request.getAttribute(UploadRateLimitFilter.CHARGED_ATTRIBUTE));
+        verify(chain).doFilter(eq(request), any());
+    }
+
+    // Test an over-budget upload is answered by the exception handlers and never reaches the controller
+    @Test
+    void doFilter_OverBudget_RejectsWithoutCallingChain() throws Exception {
+        MockHttpServletRequest request = uploadRequest("john.doe", 2048);
+        RateLimitExceededException rejection = new RateLimitExceededException("Too many upload requests", 3);
+        doThrow(rejection).when(rateLimiter).acquire(anyString(), any(), anyLong());
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(handlerExceptionResolver).resolveException(eq(request), any(), isNull(), eq(rejection));
+        verifyNoInteractions(chain);
+    }
+
+    // Test a chunked upload is left for the controller to charge once its size is known
+    @Test
+    void doFilter_WithoutContentLength_LeavesChargeToController() throws Exception {
+        MockHttpServletRequest request = uploadRequest("john.doe", -1);
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verifyNoInteractions(rateLimiter);
+        assertNull(request.getAttribute(UploadRateLimitFilter.CHARGED_ATTRIBUTE));
+        verify(chain).doFilter(eq(request), any());
+    }
+
+    // Test an upload naming its user only in a form field is rejected before the body is read
+    @Test
+    void doFilter_WithUserNameOnlyInFormField_RejectsWithBadRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/freight-fox/s3-bucket/upload");
+        request.setContentType("multipart/form-data; boundary=b");
+        request.setContent(("--b\r\nContent-Disposition: form-data; name=\"userName\"\r\n\r\njohn.doe\r\n--b--\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(handlerExceptionResolver).resolveException(eq(request), any(), isNull(), any(BadRequestException.class));
+        verifyNoInteractions(rateLimiter);
+        verifyNoInteractions(chain);
+    }
+
+    private MockHttpServletRequest uploadRequest(String userName, int contentLength) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/freight-fox/s3-bucket/upload");
+        request.setQueryString("userName=" + userName);
+        if (contentLength >= 0) {
+            request.setContent(new byte[contentLength]);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,115 @@
+package ai.freightfox.doc.storage.service.demo.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SharedDirectoryFileChangeStreamTest {
+
+    @TempDir
+    Path streamDir;
+
+    // Test a change published by one instance is polled by another, tagged with its origin
+    @Test
+    void poll_AfterOtherInstancePublishes_ReturnsItsEvents() throws Exception {
+        SharedDirectoryFileChangeStream first = newStream("node-a");
+        SharedDirectoryFileChangeStream second = newStream("node-b");
+
+        first.publish(upsert("testUser/a.pdf"));
+        first.publish(FileChangeEvent.deleted("testUser/b.pdf"));
+
+        List<FileChangeEvent> events = second.poll();
+
+        assertEquals(List.of("testUser/a.pdf", "testUser/b.pdf"), events.stream().map(FileChangeEvent::getFileKey).toList());
+        assertEquals("node-a", events.get(0).getOrigin());
+        assertEquals(FileChangeEvent.Type.DELETE, events.get(1).getType());
+        assertTrue(first.poll().isEmpty());
+        assertTrue(second.poll().isEmpty());
+    }
+
+    // Test a full segment rolls over and readers follow into the new one
+    @Test
+    void publish_PastSegmentLimit_RollsOverSegment() throws Exception {
+        SharedDirectoryFileChangeStream writer = newStream("node-a");
+        ReflectionTestUtils.setField(writer, "maxSegmentBytes", 200L);
+        SharedDirectoryFileChangeStream reader = newStream("node-b");
+
+        for (int i = 0; i < 5; i++) {
+            writer.publish(upsert("testUser/file-" + i + ".pdf"));
+        }
+
+        assertEquals(5, reader.poll().size());
+        assertTrue((int) ReflectionTestUtils.getField(writer, "segmentNumber") > 0);
+    }
+
+    // Test the relay publishes local changes but never echoes relayed ones back to the stream
+    @Test
+    void relay_WithLocalAndRemoteEvents_PublishesOnlyLocal() throws Exception {
+        SharedDirectoryFileChangeStream stream = spy(newStream("node-a"));
+        FileChangeRelay relay = new FileChangeRelay();
+        ReflectionTestUtils.setField(relay, "fileChangeStream", stream);
+        ReflectionTestUtils.setField(relay, "eventPublisher", mock(ApplicationEventPublisher.class));
+
+        relay.onFileChange(upsert("testUser/a.pdf"));
+        relay.onFileChange(upsert("testUser/b.pdf").toBuilder().origin("node-b").build());
+
+        verify(stream, times(1)).publish(any(FileChangeEvent.class));
+    }
+
+    // Test the relay polls on its own thread and hands remote changes to local listeners
+    @Test
+    void relay_AfterInit_PollsOnDedicatedThread() throws Exception {
+        SharedDirectoryFileChangeStream writer = newStream("node-b");
+        List<String> pollerThreads = new CopyOnWriteArrayList<>();
+        FileChangeRelay relay = new FileChangeRelay();
+        ReflectionTestUtils.setField(relay, "fileChangeStream", newStream("node-a"));
+        ReflectionTestUtils.setField(relay, "eventPublisher",
+                (ApplicationEventPublisher) event -> pollerThreads.add(Thread.currentThread().getName()));
+        ReflectionTestUtils.setField(relay, "pollIntervalMs", 10L);
+
+        writer.publish(upsert("testUser/a.pdf"));
+        relay.init();
+        try {
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (pollerThreads.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            relay.shutdown();
+        }
+
+        assertEquals(List.of("file-change-poller"), pollerThreads);
+    }
+
+    private SharedDirectoryFileChangeStream newStream(String instanceId) throws Exception {
+        SharedDirectoryFileChangeStream stream = new SharedDirectoryFileChangeStream();
+        ReflectionTestUtils.setField(stream, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(stream, "streamDir", streamDir.toString());
+        ReflectionTestUtils.setField(stream, "instanceId", instanceId);
+        ReflectionTestUtils.setField(stream, "maxSegmentBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(stream, "retentionMs", 3_600_000L);
+        stream.init();
+        return stream;
+    }
+
+    private FileChangeEvent upsert(String key) {
+        return FileChangeEvent.builder()
+                .type(FileChangeEvent.Type.UPSERT)
+                .fileKey(key)
+                .fileSize(1L)
+                .lastModified(Instant.now())
+                .eTag("\"etag\"")
+                .build();
+    }
+}
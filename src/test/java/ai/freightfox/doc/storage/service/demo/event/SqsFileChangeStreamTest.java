@@ -0,0 +1,73 @@
+package ai.freightfox.doc.storage.service.demo.event;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.*;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SqsFileChangeStreamTest {
+
+    private static final String NOTIFICATION = """
+            {"Records":[
+              {"eventName":"ObjectCreated:Put","eventTime":"2025-08-20T10:00:00.000Z",
+               "s3":{"object":{"key":"testUser/annual+report%281%29.pdf","size":42,"eTag":"abc123"}}},
+              {"eventName":"ObjectRemoved:Delete","eventTime":"2025-08-20T10:00:01.000Z",
+               "s3":{"object":{"key":"testUser/old.pdf"}}}
+            ]}""";
+
+    private SqsClient sqsClient;
+    private SqsFileChangeStream stream;
+
+    @BeforeEach
+    void setUp() {
+        sqsClient = mock(SqsClient.class);
+        stream = new SqsFileChangeStream();
+        ReflectionTestUtils.setField(stream, "sqsClient", sqsClient);
+        ReflectionTestUtils.setField(stream, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(stream, "queueUrl", "https://sqs.test/queue");
+        ReflectionTestUtils.setField(stream, "waitSeconds", 0);
+    }
+
+    // Test S3 notifications become change events with decoded keys and listing-style ETags
+    @Test
+    void parseNotification_WithCreateAndRemove_ReturnsEvents() throws Exception {
+        List<FileChangeEvent> events = stream.parseNotification(NOTIFICATION);
+
+        assertEquals(2, events.size());
+        assertEquals(FileChangeEvent.Type.UPSERT, events.get(0).getType());
+        assertEquals("testUser/annual report(1).pdf", events.get(0).getFileKey());
+        assertEquals(42L, events.get(0).getFileSize());
+        assertEquals("\"abc123\"", events.get(0).getETag());
+        assertEquals(Instant.parse("2025-08-20T10:00:00Z"), events.get(0).getLastModified());
+        assertEquals(FileChangeEvent.Type.DELETE, events.get(1).getType());
+        assertEquals(SqsFileChangeStream.ORIGIN, events.get(1).getOrigin());
+    }
+
+    // Test notifications fanned out through SNS are unwrapped and the messages deleted after polling
+    @Test
+    void poll_WithSnsEnvelope_UnwrapsAndDeletesMessages() throws Exception {
+        String envelope = new ObjectMapper().createObjectNode()
+                .put("Type", "Notification")
+                .put("Message", NOTIFICATION)
+                .toString();
+        when(sqsClient.receiveMessage(any(ReceiveMessageRequest.class))).thenReturn(ReceiveMessageResponse.builder()
+                .messages(Message.builder().messageId("m1").receiptHandle("r1").body(envelope).build(),
+                        Message.builder().messageId("m2").receiptHandle("r2").body("{\"Event\":\"s3:TestEvent\"}").build())
+                .build());
+
+        List<FileChangeEvent> events = stream.poll();
+
+        assertEquals(2, events.size());
+        verify(sqsClient, times(1)).deleteMessageBatch(argThat((DeleteMessageBatchRequest request) ->
+                request.entries().size() == 2));
+    }
+}
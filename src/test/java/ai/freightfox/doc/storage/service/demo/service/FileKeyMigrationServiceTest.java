@@ -0,0 +1,73 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileKeyMigrationServiceTest {
+
+    private static final Instant OLDER = Instant.parse("2025-01-01T00:00:00Z");
+    private static final Instant NEWER = Instant.parse("2025-06-01T00:00:00Z");
+
+    @Mock
+    private S3Client s3Client;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @InjectMocks
+    private FileKeyMigrationService migrationService;
+
+    @BeforeEach
+    void setUp() {
+        FileKeyLayout shardedLayout = new FileKeyLayout();
+        ReflectionTestUtils.setField(shardedLayout, "shards", 2);
+        ReflectionTestUtils.setField(shardedLayout, "includeLegacy", true);
+        ReflectionTestUtils.setField(migrationService, "fileKeyLayout", shardedLayout);
+        ReflectionTestUtils.setField(migrationService, "s3BucketName", "test-bucket");
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .isTruncated(false)
+                .contents(S3Object.builder().key("testUser/a.pdf").size(1L).lastModified(OLDER).build())
+                .build());
+    }
+
+    // Test a newer upload already at the sharded key is kept and only the legacy copy removed
+    @Test
+    void migrateUser_WithNewerShardedCopy_SkipsCopy() {
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().lastModified(NEWER).build());
+
+        assertEquals(1, migrationService.migrateUser("testUser"));
+
+        verify(s3Client, never()).copyObject(any(CopyObjectRequest.class));
+        verify(s3Client).deleteObject(argThat((DeleteObjectRequest request) -> request.key().equals("testUser/a.pdf")));
+    }
+
+    // Test a legacy object without a sharded copy is copied before it is deleted
+    @Test
+    void migrateUser_WithoutShardedCopy_CopiesThenDeletes() {
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder().build());
+        when(s3Client.copyObject(any(CopyObjectRequest.class))).thenReturn(CopyObjectResponse.builder().build());
+
+        migrationService.migrateUser("testUser");
+
+        var order = inOrder(s3Client);
+        order.verify(s3Client).copyObject(any(CopyObjectRequest.class));
+        order.verify(s3Client).deleteObject(any(DeleteObjectRequest.class));
+    }
+}
@@ -0,0 +1,182 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MetadataCatalogTest {
+
+    @TempDir
+    Path catalogDir;
+
+    private S3Client s3Client;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+    }
+
+    // Test a user is not served from the catalog until a complete listing has been recorded
+    @Test
+    void listUser_BeforeListingRecorded_ReturnsNull() throws Exception {
+        MetadataCatalog catalog = newCatalog();
+        catalog.onFileChange(upsert("testUser/a.pdf", 1L, "etag-a"));
+
+        assertNull(catalog.listUser("testUser"));
+
+        catalog.recordUserListing("testUser", List.of(object("testUser/a.pdf", 1L, "etag-a")), catalog.currentVersion());
+        assertEquals(List.of("testUser/a.pdf"), keys(catalog.listUser("testUser")));
+    }
+
+    // Test change events keep a synced user's listing current without going back to S3
+    @Test
+    void onFileChange_ForSyncedUser_UpdatesListing() throws Exception {
+        MetadataCatalog catalog = newCatalog();
+        catalog.recordUserListing("testUser", List.of(object("testUser/a.pdf", 1L, "etag-a")), catalog.currentVersion());
+
+        catalog.onFileChange(upsert("testUser/b.pdf", 2L, "etag-b"));
+        catalog.onFileChange(FileChangeEvent.deleted("testUser/a.pdf"));
+        catalog.onFileChange(upsert("_packs/testUser/index.json", 9L, "etag-index"));
+
+        assertEquals(List.of("testUser/b.pdf"), keys(catalog.listUser("testUser")));
+        assertEquals("application/pdf", catalog.find("testUser/b.pdf").getContentType());
+        verifyNoInteractions(s3Client);
+    }
+
+    // Test a relayed event older than the catalogued entry does not undo the newer change
+    @Test
+    void onFileChange_WithStaleRemoteEvent_KeepsNewerEntry() throws Exception {
+        MetadataCatalog catalog = newCatalog();
+        catalog.onFileChange(upsert("testUser/a.pdf", 2L, "etag-new"));
+
+        catalog.onFileChange(FileChangeEvent.deleted("testUser/a.pdf").toBuilder()
+                .lastModified(Instant.now().minusSeconds(60))
+                .origin("s3")
+                .build());
+
+        assertEquals("etag-new", catalog.find("testUser/a.pdf").getETag());
+    }
+
+    // Test a restarted catalog rebuilds its state from the snapshot plus the log written after it
+    @Test
+    void init_AfterRestart_ReloadsSnapshotAndLog() throws Exception {
+        MetadataCatalog before = newCatalog();
+        before.recordUserListing("testUser", List.of(object("testUser/a.pdf", 1L, "etag-a")), before.currentVersion());
+        ReflectionTestUtils.invokeMethod(before, "compact");
+        before.onFileChange(upsert("testUser/b.pdf", 2L, "etag-b"));
+
+        MetadataCatalog restarted = newCatalog();
+
+        assertEquals(List.of("testUser/a.pdf", "testUser/b.pdf"), keys(restarted.listUser("testUser")));
+        assertEquals("etag-b", restarted.find("testUser/b.pdf").getETag());
+    }
+
+    // Test changes made while a listing was in flight survive that listing being recorded
+    @Test
+    void recordUserListing_OvertakenByChanges_KeepsNewerEntries() throws Exception {
+        MetadataCatalog catalog = newCatalog();
+        catalog.onFileChange(upsert("testUser/gone.pdf", 1L, "etag-gone"));
+        long listedSince = catalog.currentVersion();
+
+        catalog.onFileChange(upsert("testUser/new.pdf", 2L, "etag-new"));
+        catalog.onFileChange(FileChangeEvent.deleted("testUser/gone.pdf"));
+        catalog.recordUserListing("testUser", List.of(object("testUser/gone.pdf", 1L, "etag-gone")), listedSince);
+
+        assertEquals(List.of("testUser/new.pdf"), keys(catalog.listUser("testUser")));
+    }
+
+    // Test a log rotated by a compaction that never wrote its snapshot is replayed on restart
+    @Test
+    void init_AfterInterruptedCompaction_ReplaysRotatedLog() throws Exception {
+        MetadataCatalog before = newCatalog();
+        before.recordUserListing("testUser", List.of(object("testUser/a.pdf", 1L, "etag-a")), before.currentVersion());
+        before.onFileChange(upsert("testUser/b.pdf", 2L, "etag-b"));
+        ReflectionTestUtils.invokeMethod(before, "compact");
+        before.onFileChange(upsert("testUser/c.pdf", 3L, "etag-c"));
+        // What a crash between rotating the log and writing the snapshot leaves behind
+        Files.move(catalogDir.resolve("catalog.log"), catalogDir.resolve("catalog.log.2"));
+
+        MetadataCatalog restarted = newCatalog();
+        ReflectionTestUtils.invokeMethod(restarted, "compact");
+        MetadataCatalog restartedAgain = newCatalog();
+
+        assertEquals(List.of("testUser/a.pdf", "testUser/b.pdf", "testUser/c.pdf"), keys(restarted.listUser("testUser")));
+        assertEquals(List.of("testUser/a.pdf", "testUser/b.pdf", "testUser/c.pdf"), keys(restartedAgain.listUser("testUser")));
+        assertFalse(Files.exists(catalogDir.resolve("catalog.log.2")));
+    }
+
+    // Test the background sync adds, updates and removes entries to match the bucket
+    @Test
+    void syncFromS3_WithChangedBucket_ReconcilesEntries() throws Exception {
+        MetadataCatalog catalog = newCatalog();
+        catalog.onFileChange(upsert("testUser/a.pdf", 1L, "etag-a"));
+        catalog.onFileChange(upsert("testUser/gone.pdf", 1L, "etag-gone"));
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().isTruncated(false).contents(
+                        object("_packs/testUser/p1.pack", 100L, "etag-pack"),
+                        object("otherUser/c.pdf", 3L, "etag-c"),
+                        object("testUser/a.pdf", 1L, "etag-a"),
+                        object("testUser/b.pdf", 2L, "etag-b")).build());
+
+        catalog.syncFromS3();
+
+        assertEquals(List.of("testUser/a.pdf", "testUser/b.pdf"), keys(catalog.listUser("testUser")));
+        assertEquals(List.of("otherUser/c.pdf"), keys(catalog.listUser("otherUser")));
+        assertEquals("application/pdf", catalog.find("testUser/a.pdf").getContentType());
+        assertNull(catalog.find("_packs/testUser/p1.pack"));
+    }
+
+    private MetadataCatalog newCatalog() throws Exception {
+        SmallFilePacker packer = new SmallFilePacker();
+        ReflectionTestUtils.setField(packer, "keyPrefix", "_packs");
+
+        MetadataCatalog catalog = new MetadataCatalog();
+        ReflectionTestUtils.setField(catalog, "s3Client", s3Client);
+        ReflectionTestUtils.setField(catalog, "fileKeyLayout", new FileKeyLayout());
+        ReflectionTestUtils.setField(catalog, "smallFilePacker", packer);
+        ReflectionTestUtils.setField(catalog, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(catalog, "enabled", true);
+        ReflectionTestUtils.setField(catalog, "catalogDir", catalogDir.toString());
+        ReflectionTestUtils.setField(catalog, "pagesPerRun", 10);
+        ReflectionTestUtils.setField(catalog, "compactAfterRecords", 100);
+        ReflectionTestUtils.setField(catalog, "s3BucketName", "test-bucket");
+        catalog.init();
+        return catalog;
+    }
+
+    private FileChangeEvent upsert(String key, long size, String eTag) {
+        return FileChangeEvent.builder()
+                .type(FileChangeEvent.Type.UPSERT)
+                .fileKey(key)
+                .fileSize(size)
+                .lastModified(Instant.now())
+                .contentType("application/pdf")
+                .eTag(eTag)
+                .build();
+    }
+
+    private S3Object object(String key, long size, String eTag) {
+        return S3Object.builder().key(key).size(size).eTag(eTag).lastModified(Instant.now()).build();
+    }
+
+    private List<String> keys(List<S3Object> objects) {
+        return objects.stream().map(S3Object::key).toList();
+    }
+}
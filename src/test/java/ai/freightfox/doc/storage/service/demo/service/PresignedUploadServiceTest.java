@@ -0,0 +1,125 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.dto.request.CompleteUploadRequest;
+import ai.freightfox.doc.storage.service.demo.dto.request.CompletedPartRequest;
+import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileUploadException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PresignedUploadServiceTest {
+
+    @Mock
+    private S3Client s3Client;
+
+    @Mock
+    private StorageService storageService;
+
+    @InjectMocks
+    private PresignedUploadService presignedUploadService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(presignedUploadService, "s3BucketName", "test-bucket");
+        ReflectionTestUtils.setField(presignedUploadService, "fileKeyLayout", new FileKeyLayout());
+        ReflectionTestUtils.setField(presignedUploadService, "maxFileSize", DataSize.ofMegabytes(50));
+        ReflectionTestUtils.setField(presignedUploadService, "maxMultipartSize", DataSize.ofGigabytes(5));
+    }
+
+    // Test completing a single PUT upload verifies the object without touching multipart APIs
+    @Test
+    void completeUpload_WithSinglePutUpload_VerifiesStoredFile() {
+        FileMetadataResponse metadata = FileMetadataResponse.builder()
+                .fileName("test.pdf")
+                .fileKey("testUser/test.pdf")
+                .fileSize(2048L)
+                .lastModified(Instant.now())
+                .build();
+        when(storageService.verifyStoredFile("test.pdf", "testUser/test.pdf")).thenReturn(metadata);
+
+        FileMetadataResponse result = presignedUploadService.completeUpload(
+                new CompleteUploadRequest("testUser", "test.pdf", null, null));
+
+        assertSame(metadata, result);
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    // Test completing a multipart upload sends the parts in part-number order
+    @Test
+    void completeUpload_WithMultipartUpload_CompletesPartsInOrder() {
+        presignedUploadService.completeUpload(new CompleteUploadRequest("testUser", "big.pdf", "upload-1",
+                List.of(new CompletedPartRequest(2, "etag-2"), new CompletedPartRequest(1, "etag-1"))));
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> captor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(captor.capture());
+        assertEquals("upload-1", captor.getValue().uploadId());
+        assertEquals(List.of(1, 2), captor.getValue().multipartUpload().parts().stream()
+                .map(CompletedPart::partNumber).toList());
+        verify(storageService).verifyStoredFile("big.pdf", "testUser/big.pdf");
+    }
+
+    // Test completing a multipart upload without parts is rejected before calling S3
+    @Test
+    void completeUpload_WithMultipartUploadAndNoParts_ThrowsBadRequestException() {
+        assertThrows(BadRequestException.class, () -> presignedUploadService.completeUpload(
+                new CompleteUploadRequest("testUser", "big.pdf", "upload-1", List.of())));
+
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    // Test presign validation rejects file names that would escape the user prefix
+    @Test
+    void presignUpload_WithSlashInFileName_ThrowsBadRequestException() {
+        assertThrows(BadRequestException.class,
+                () -> presignedUploadService.presignUpload("testUser", "../other/test.pdf", null, 1024L));
+    }
+
+    // Test presigning is refused for a declared size above the configured file limit
+    @Test
+    void presignUpload_AboveMaxFileSize_ThrowsBadRequestException() {
+        assertThrows(BadRequestException.class, () -> presignedUploadService.presignUpload(
+                "testUser", "test.pdf", null, DataSize.ofMegabytes(51).toBytes()));
+
+        verifyNoInteractions(storageService);
+    }
+
+    // Test a multipart upload whose parts would be smaller than S3 allows is refused before it is created
+    @Test
+    void initiateMultipartUpload_WithTooSmallParts_ThrowsBadRequestException() {
+        assertThrows(BadRequestException.class, () -> presignedUploadService.initiateMultipartUpload(
+                "testUser", "big.pdf", null, DataSize.ofMegabytes(8).toBytes(), 2));
+
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    // Test aborting an unknown upload is a bad request and other S3 errors become upload failures
+    @Test
+    void abortMultipartUpload_WithS3Errors_MapsToApiExceptions() {
+        when(s3Client.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+                .thenThrow(NoSuchUploadException.builder().message("gone").build())
+                .thenThrow(S3Exception.builder().message("S3 Error").build());
+
+        assertThrows(BadRequestException.class,
+                () -> presignedUploadService.abortMultipartUpload("testUser", "big.pdf", "upload-1"));
+        assertThrows(FileUploadException.class,
+                () -> presignedUploadService.abortMultipartUpload("testUser", "big.pdf", "upload-1"));
+    }
+}
@@ -0,0 +1,130 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.RateLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private RateLimiter rateLimiter;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        rateLimiter = new RateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(rateLimiter, "enabled", true);
+        // Slow enough that nothing refills while a test runs
+        ReflectionTestUtils.setField(rateLimiter, "searchPerSecond", 0.01);
+        ReflectionTestUtils.setField(rateLimiter, "searchBurst", 3L);
+        ReflectionTestUtils.setField(rateLimiter, "uploadBytesPerSecond", 0.01);
+        ReflectionTestUtils.setField(rateLimiter, "uploadBurstBytes", 100L);
+        ReflectionTestUtils.setField(rateLimiter, "deletePerSecond", 0.01);
+        ReflectionTestUtils.setField(rateLimiter, "deleteBurst", 1L);
+    }
+
+    // Test a user gets the burst, is then rejected with a retry hint, and the rejection is counted
+    @Test
+    void acquire_PastBurst_ThrowsAndCountsRejection() {
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire("testUser", RateLimiter.Operation.SEARCH);
+        }
+
+        RateLimitExceededException exception = assertThrows(RateLimitExceededException.class,
+                () -> rateLimiter.acquire("testUser", RateLimiter.Operation.SEARCH));
+
+        assertTrue(exception.getRetryAfterSeconds() >= 1);
+        assertEquals(1.0, meterRegistry.counter("rate.limit.rejections", "operation", "search").count());
+    }
+
+    // Test budgets are kept apart per user and per operation
+    @Test
+    void acquire_WithExhaustedBucket_LeavesOtherBucketsAlone() {
+        rateLimiter.acquire("testUser", RateLimiter.Operation.DELETE);
+        assertThrows(RateLimitExceededException.class,
+                () -> rateLimiter.acquire("testUser", RateLimiter.Operation.DELETE));
+
+        assertDoesNotThrow(() -> rateLimiter.acquire("otherUser", RateLimiter.Operation.DELETE));
+        assertDoesNotThrow(() -> rateLimiter.acquire("testUser", RateLimiter.Operation.SEARCH));
+    }
+
+    // Test an upload larger than the whole byte burst passes on a full bucket and empties it
+    @Test
+    void acquire_UploadLargerThanBurst_NeedsOnlyFullBucket() {
+        rateLimiter.acquire("testUser", RateLimiter.Operation.UPLOAD_BYTES, 5_000L);
+
+        assertThrows(RateLimitExceededException.class,
+                () -> rateLimiter.acquire("testUser", RateLimiter.Operation.UPLOAD_BYTES, 1L));
+    }
+
+    // Test back-to-back uploads over the burst are throttled until the whole first one has refilled
+    @Test
+    void acquire_TwoUploadsOverBurst_ThrottlesSecondForFullCost() {
+        ReflectionTestUtils.setField(rateLimiter, "uploadBytesPerSecond", 100.0);
+
+        rateLimiter.acquire("testUser", RateLimiter.Operation.UPLOAD_BYTES, 1_000L);
+        RateLimitExceededException exception = assertThrows(RateLimitExceededException.class,
+                () -> rateLimiter.acquire("testUser", RateLimiter.Operation.UPLOAD_BYTES, 1_000L));
+
+        // 1000 bytes at 100 bytes per second, not one 100-byte burst
+        assertTrue(exception.getRetryAfterSeconds() >= 9, "retry after " + exception.getRetryAfterSeconds());
+    }
+
+    // Test concurrent callers never get more than the burst between them
+    @Test
+    void acquire_FromManyThreads_GrantsExactlyBurst() throws Exception {
+        ReflectionTestUtils.setField(rateLimiter, "searchBurst", 50L);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        rateLimiter.acquire("testUser", RateLimiter.Operation.SEARCH);
+                        granted.incrementAndGet();
+                    } catch (RateLimitExceededException e) {
+                        // expected once the burst is used up
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(50, granted.get());
+        assertEquals(150.0, meterRegistry.counter("rate.limit.rejections", "operation", "search").count());
+    }
+
+    // Test nothing is limited while rate limiting is disabled
+    @Test
+    void acquire_WhenDisabled_NeverRejects() {
+        ReflectionTestUtils.setField(rateLimiter, "enabled", false);
+
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.acquire("testUser", RateLimiter.Operation.DELETE);
+        }
+
+        assertTrue(meterRegistry.getMeters().isEmpty());
+    }
+}
@@ -0,0 +1,142 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.dto.response.ByteRangeResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+import ai.freightfox.doc.storage.service.demo.dto.response.UploadSessionResponse;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ResumableUploadServiceTest {
+
+    private static final long CHUNK_SIZE = 4L;
+
+    @Mock
+    private S3Client s3Client;
+
+    @Mock
+    private StorageService storageService;
+
+    @InjectMocks
+    private ResumableUploadService resumableUploadService;
+
+    @TempDir
+    Path sessionsDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(resumableUploadService, "s3BucketName", "test-bucket");
+        ReflectionTestUtils.setField(resumableUploadService, "chunkSize", CHUNK_SIZE);
+        ReflectionTestUtils.setField(resumableUploadService, "expiryHours", 24L);
+        ReflectionTestUtils.setField(resumableUploadService, "fileKeyLayout", new FileKeyLayout());
+        ReflectionTestUtils.setField(resumableUploadService, "uploadSessionStore", newStore());
+
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    }
+
+    // Test received ranges merge contiguous chunks and report the gaps as missing offsets
+    @Test
+    void uploadChunk_WithGap_ReportsReceivedRangesAndMissingOffsets() {
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+
+        String sessionId = resumableUploadService.createSession("testUser", "scan.pdf", 10L, null).getSessionId();
+        resumableUploadService.uploadChunk(sessionId, 0L, new byte[4]);
+        UploadSessionResponse response = resumableUploadService.uploadChunk(sessionId, 8L, new byte[2]);
+
+        assertEquals(3, response.getTotalChunks());
+        assertEquals(6L, response.getReceivedBytes());
+        assertEquals(List.of(new ByteRangeResponse(0L, 3L), new ByteRangeResponse(8L, 9L)), response.getReceivedRanges());
+        assertEquals(List.of(4L), response.getMissingOffsets());
+    }
+
+    // Test a chunk with the wrong length is rejected before reaching S3
+    @Test
+    void uploadChunk_WithWrongLength_ThrowsBadRequestException() {
+        String sessionId = resumableUploadService.createSession("testUser", "scan.pdf", 10L, null).getSessionId();
+
+        assertThrows(BadRequestException.class, () -> resumableUploadService.uploadChunk(sessionId, 0L, new byte[3]));
+        verify(s3Client, never()).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+    }
+
+    // Test committing before every chunk arrived is rejected
+    @Test
+    void commit_WithMissingChunks_ThrowsBadRequestException() {
+        String sessionId = resumableUploadService.createSession("testUser", "scan.pdf", 10L, null).getSessionId();
+
+        BadRequestException exception = assertThrows(BadRequestException.class,
+                () -> resumableUploadService.commit(sessionId));
+
+        assertEquals("Upload incomplete: received 0 of 3 chunks", exception.getMessage());
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    // Test sessions are reloaded from disk so an upload can resume after a restart
+    @Test
+    void commit_AfterRestart_CompletesWithPersistedParts() throws Exception {
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag-2").build(),
+                        UploadPartResponse.builder().eTag("etag-1").build());
+
+        String sessionId = resumableUploadService.createSession("testUser", "scan.pdf", 8L, null).getSessionId();
+        resumableUploadService.uploadChunk(sessionId, 4L, new byte[4]);
+        resumableUploadService.uploadChunk(sessionId, 0L, new byte[4]);
+
+        ReflectionTestUtils.setField(resumableUploadService, "uploadSessionStore", newStore());
+        resumableUploadService.commit(sessionId);
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> captor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(captor.capture());
+        assertEquals(List.of("etag-1", "etag-2"), captor.getValue().multipartUpload().parts().stream()
+                .map(CompletedPart::eTag).toList());
+        verify(storageService).verifyStoredFile("scan.pdf", "testUser/scan.pdf");
+        assertThrows(BadRequestException.class, () -> resumableUploadService.getSession(sessionId));
+    }
+
+    // Test a commit retried after a lost response returns the stored file without completing or counting it again
+    @Test
+    void commit_Repeated_ReturnsStoredFileAgain() {
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+        FileMetadataResponse stored = FileMetadataResponse.builder().fileName("scan.pdf").fileKey("testUser/scan.pdf").build();
+        when(storageService.verifyStoredFile("scan.pdf", "testUser/scan.pdf")).thenReturn(stored);
+        when(storageService.describeStoredFile("scan.pdf", "testUser/scan.pdf")).thenReturn(stored);
+
+        String sessionId = resumableUploadService.createSession("testUser", "scan.pdf", 4L, null).getSessionId();
+        resumableUploadService.uploadChunk(sessionId, 0L, new byte[4]);
+
+        assertSame(stored, resumableUploadService.commit(sessionId));
+        assertSame(stored, resumableUploadService.commit(sessionId));
+        verify(s3Client, times(1)).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        verify(storageService, times(1)).verifyStoredFile("scan.pdf", "testUser/scan.pdf");
+        assertThrows(BadRequestException.class, () -> resumableUploadService.uploadChunk(sessionId, 0L, new byte[4]));
+    }
+
+    private UploadSessionStore newStore() throws Exception {
+        UploadSessionStore store = new UploadSessionStore();
+        ReflectionTestUtils.setField(store, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(store, "sessionsDir", sessionsDir.toString());
+        store.init();
+        return store;
+    }
+}
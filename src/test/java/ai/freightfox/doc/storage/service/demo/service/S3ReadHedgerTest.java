@@ -0,0 +1,118 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3ReadHedgerTest {
+
+    private S3ReadHedger hedger;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        hedger = new S3ReadHedger();
+        ReflectionTestUtils.setField(hedger, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(hedger, "enabled", true);
+        ReflectionTestUtils.setField(hedger, "percentile", 0.95);
+        ReflectionTestUtils.setField(hedger, "minDelayMs", 5L);
+        ReflectionTestUtils.setField(hedger, "budgetRatio", 0.5);
+        hedger.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        hedger.shutdown();
+    }
+
+    // Test disabled hedger calls straight through without counting reads
+    @Test
+    void execute_WhenDisabled_CallsSupplierDirectly() {
+        S3ReadHedger disabled = new S3ReadHedger();
+
+        assertEquals("ok", disabled.execute("HeadObject", () -> "ok"));
+        assertEquals(0, disabled.getTotalReads());
+    }
+
+    // Test a slow primary is hedged and the faster duplicate wins
+    @Test
+    void execute_WithSlowPrimary_HedgeWins() {
+        warmUp();
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = hedger.execute("GetObject", () -> {
+            if (attempts.getAndIncrement() == 0) {
+                sleep(2000);
+                return "primary";
+            }
+            return "hedge";
+        });
+
+        assertEquals("hedge", result);
+        assertEquals(1, hedger.getHedgesSent());
+        assertEquals(1.0, meterRegistry.counter("s3.read.hedge.wins", "operation", "GetObject").count());
+    }
+
+    // Test hedges are not sent once the budget is used up
+    @Test
+    void execute_WithExhaustedBudget_WaitsForPrimary() {
+        ReflectionTestUtils.setField(hedger, "budgetRatio", 0.0);
+        warmUp();
+
+        String result = hedger.execute("GetObject", () -> {
+            sleep(50);
+            return "primary";
+        });
+
+        assertEquals("primary", result);
+        assertEquals(0, hedger.getHedgesSent());
+    }
+
+    // Test reads from before the budget window do not pay for hedges sent after a quiet spell
+    @Test
+    void execute_AfterQuietSpell_DoesNotSpendOldBudget() {
+        hedger.shutdown();
+        ReflectionTestUtils.setField(hedger, "budgetWindowSeconds", 1);
+        hedger.init();
+        warmUp();
+        sleep(2100);
+
+        String result = hedger.execute("GetObject", () -> {
+            sleep(50);
+            return "primary";
+        });
+
+        assertEquals("primary", result);
+        assertEquals(0, hedger.getHedgesSent());
+    }
+
+    // Test S3 exceptions surface unwrapped so callers can still catch them by type
+    @Test
+    void execute_WithS3Exception_RethrowsOriginal() {
+        assertThrows(NoSuchKeyException.class, () -> hedger.execute("HeadObject", () -> {
+            throw NoSuchKeyException.builder().build();
+        }));
+    }
+
+    private void warmUp() {
+        for (int i = 0; i < 25; i++) {
+            hedger.execute("GetObject", () -> "warm");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
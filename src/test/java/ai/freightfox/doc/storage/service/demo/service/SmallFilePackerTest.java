@@ -0,0 +1,224 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
+import ai.freightfox.doc.storage.service.demo.model.PackedFile;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SmallFilePackerTest {
+
+    @TempDir
+    Path packingDir;
+
+    private S3Client s3Client;
+    private final Map<String, byte[]> bucket = new ConcurrentHashMap<>();
+    private final Map<String, String> eTags = new ConcurrentHashMap<>();
+    private final List<FileChangeEvent> publishedEvents = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+
+        // Honours If-Match / If-None-Match the way S3 does for conditional writes
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            PutObjectRequest request = invocation.getArgument(0);
+            RequestBody body = invocation.getArgument(1);
+            Map<String, List<String>> headers = request.overrideConfiguration()
+                    .map(AwsRequestOverrideConfiguration::headers).orElse(Map.of());
+            synchronized (bucket) {
+                String current = eTags.get(request.key());
+                if (headers.containsKey("If-None-Match") && current != null
+                        || headers.containsKey("If-Match") && !headers.get("If-Match").get(0).equals(current)) {
+                    throw S3Exception.builder().statusCode(412).message("Precondition Failed").build();
+                }
+                try (InputStream content = body.contentStreamProvider().newStream()) {
+                    bucket.put(request.key(), content.readAllBytes());
+                }
+                String eTag = "\"" + UUID.randomUUID() + "\"";
+                eTags.put(request.key(), eTag);
+                return PutObjectResponse.builder().eTag(eTag).build();
+            }
+        });
+
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            byte[] object = bucket.get(request.key());
+            if (object == null) {
+                throw NoSuchKeyException.builder().build();
+            }
+            if (request.range() != null) {
+                String[] range = request.range().replace("bytes=", "").split("-");
+                object = Arrays.copyOfRange(object, Integer.parseInt(range[0]), Integer.parseInt(range[1]) + 1);
+            }
+            return ResponseBytes.fromByteArray(GetObjectResponse.builder().eTag(eTags.get(request.key())).build(), object);
+        });
+
+        when(s3Client.deleteObject(any(DeleteObjectRequest.class))).thenAnswer(invocation -> {
+            DeleteObjectRequest request = invocation.getArgument(0);
+            bucket.remove(request.key());
+            eTags.remove(request.key());
+            return DeleteObjectResponse.builder().build();
+        });
+    }
+
+    // Test files in the open pack are served from local disk before anything reaches S3
+    @Test
+    void read_FromOpenPack_ServesLocalBytes() throws Exception {
+        SmallFilePacker packer = newPacker();
+
+        packer.append("testUser", "a.txt", "text/plain", "alpha".getBytes());
+        PackedFile b = packer.append("testUser", "b.txt", "text/plain", "bravo".getBytes());
+
+        assertEquals(5L, b.getOffset());
+        assertEquals("bravo", new String(packer.read(packer.find("testUser", "b.txt"))));
+        assertFalse(bucket.keySet().stream().anyMatch(key -> key.endsWith(".pack")));
+    }
+
+    // Test sealing writes one pack object and later reads use ranged GETs against it
+    @Test
+    void sealOpenPacks_WritesPackAndIndex_ThenReadsByRange() throws Exception {
+        SmallFilePacker packer = newPacker();
+        packer.append("testUser", "a.txt", "text/plain", "alpha".getBytes());
+        packer.append("testUser", "b.txt", "text/plain", "bravo".getBytes());
+
+        packer.sealOpenPacks();
+
+        assertTrue(bucket.containsKey("_packs/testUser/index.json"));
+        assertEquals(1, bucket.keySet().stream().filter(key -> key.endsWith(".pack")).count());
+        assertEquals("bravo", new String(packer.read(packer.find("testUser", "b.txt"))));
+        assertEquals(List.of("a.txt", "b.txt"),
+                packer.listFiles("testUser").stream().map(PackedFile::getFileName).toList());
+        verify(s3Client, times(1)).putObject(argThat((PutObjectRequest request) -> request.key().endsWith(".pack")),
+                any(RequestBody.class));
+    }
+
+    // Test compaction rewrites a mostly-deleted pack and keeps surviving files readable
+    @Test
+    void compact_WithDeletedEntries_RewritesPack() throws Exception {
+        SmallFilePacker packer = newPacker();
+        packer.append("testUser", "a.txt", null, "alpha".getBytes());
+        packer.append("testUser", "b.txt", null, "bravo".getBytes());
+        packer.append("testUser", "c.txt", null, "charlie".getBytes());
+        packer.sealOpenPacks();
+        String oldPack = packer.find("testUser", "c.txt").getPackKey();
+
+        assertTrue(packer.remove("testUser", "a.txt"));
+        assertTrue(packer.remove("testUser", "b.txt"));
+        packer.compact();
+
+        PackedFile c = packer.find("testUser", "c.txt");
+        assertNotEquals(oldPack, c.getPackKey());
+        assertEquals(0L, c.getOffset());
+        assertFalse(bucket.containsKey(oldPack));
+        assertEquals(7, bucket.get(c.getPackKey()).length);
+        assertEquals("charlie", new String(packer.read(c)));
+        assertNull(packer.find("testUser", "a.txt"));
+    }
+
+    // Test an open pack is replayed from its journal after a restart, deletes included
+    @Test
+    void init_AfterRestart_ReplaysOpenPack() throws Exception {
+        SmallFilePacker crashed = newPacker();
+        crashed.append("testUser", "a.txt", null, "alpha".getBytes());
+        crashed.append("testUser", "b.txt", null, "bravo".getBytes());
+        crashed.remove("testUser", "a.txt");
+
+        SmallFilePacker restarted = newPacker();
+
+        assertNull(restarted.find("testUser", "a.txt"));
+        assertEquals("bravo", new String(restarted.read(restarted.find("testUser", "b.txt"))));
+
+        restarted.sealOpenPacks();
+        assertEquals(List.of("b.txt"), restarted.listFiles("testUser").stream().map(PackedFile::getFileName).toList());
+    }
+
+    // Test an instance holding a stale index merges into the newer one instead of overwriting it
+    @Test
+    void sealOpenPacks_WithStaleCachedIndex_ReloadsAndMerges() throws Exception {
+        SmallFilePacker first = newPacker(packingDir.resolve("first"));
+        SmallFilePacker second = newPacker(packingDir.resolve("second"));
+        assertNull(second.find("testUser", "b.txt"));
+
+        first.append("testUser", "a.txt", null, "alpha".getBytes());
+        first.sealOpenPacks();
+        second.append("testUser", "b.txt", null, "bravo".getBytes());
+        second.sealOpenPacks();
+
+        assertEquals(List.of("a.txt", "b.txt"),
+                newPacker(packingDir.resolve("third")).listFiles("testUser").stream().map(PackedFile::getFileName).toList());
+        assertEquals(List.of("a.txt", "b.txt"),
+                second.listFiles("testUser").stream().map(PackedFile::getFileName).toList());
+    }
+
+    // Test a relayed index change drops the cached index so the other instance's files show up
+    @Test
+    void onFileChange_WithRemoteIndexChange_ReloadsIndex() throws Exception {
+        SmallFilePacker first = newPacker(packingDir.resolve("first"));
+        SmallFilePacker second = newPacker(packingDir.resolve("second"));
+        assertNull(second.find("testUser", "a.txt"));
+
+        first.append("testUser", "a.txt", null, "alpha".getBytes());
+        first.sealOpenPacks();
+        FileChangeEvent indexChange = publishedEvents.get(publishedEvents.size() - 1);
+        assertEquals("_packs/testUser/index.json", indexChange.getFileKey());
+        second.onFileChange(indexChange.toBuilder().origin("first").build());
+
+        assertEquals("alpha", new String(second.read(second.find("testUser", "a.txt"))));
+    }
+
+    // Test packing refuses to start when changes are relayed between replicas, since open packs are local
+    @Test
+    void init_WithRelayedEvents_Refuses() {
+        SmallFilePacker packer = new SmallFilePacker();
+        ReflectionTestUtils.setField(packer, "enabled", true);
+        ReflectionTestUtils.setField(packer, "eventsStream", "sqs");
+        ReflectionTestUtils.setField(packer, "packingDir", packingDir.toString());
+
+        assertThrows(IllegalStateException.class, packer::init);
+    }
+
+    private SmallFilePacker newPacker() throws Exception {
+        return newPacker(packingDir);
+    }
+
+    private SmallFilePacker newPacker(Path packingDir) throws Exception {
+        SmallFilePacker packer = new SmallFilePacker();
+        ReflectionTestUtils.setField(packer, "s3Client", s3Client);
+        ReflectionTestUtils.setField(packer, "s3ReadHedger", new S3ReadHedger());
+        ReflectionTestUtils.setField(packer, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(packer, "eventPublisher",
+                (ApplicationEventPublisher) event -> publishedEvents.add((FileChangeEvent) event));
+        ReflectionTestUtils.setField(packer, "enabled", true);
+        ReflectionTestUtils.setField(packer, "packingDir", packingDir.toString());
+        ReflectionTestUtils.setField(packer, "keyPrefix", "_packs");
+        ReflectionTestUtils.setField(packer, "maxFileBytes", 1024L);
+        ReflectionTestUtils.setField(packer, "packTargetBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(packer, "sealAfterMs", 0L);
+        ReflectionTestUtils.setField(packer, "minGarbageRatio", 0.5);
+        ReflectionTestUtils.setField(packer, "s3BucketName", "test-bucket");
+        packer.init();
+        return packer;
+    }
+}
@@ -1,26 +1,36 @@
 package ai.freightfox.doc.storage.service.demo.service;
 
+import ai.freightfox.doc.storage.service.demo.dto.request.FileSearchFilter;
 import ai.freightfox.doc.storage.service.demo.dto.response.FileMetadataResponse;
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.BadRequestException;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileSearchException;
 import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.FileUploadException;
+import ai.freightfox.doc.storage.service.demo.model.SearchPage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.util.ReflectionTestUtils;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
 
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -30,6 +40,9 @@ class StorageServiceTest {
     @Mock
     private S3Client s3Client;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private StorageService storageService;
 
@@ -40,6 +53,12 @@ class StorageServiceTest {
     void setUp() {
         ReflectionTestUtils.setField(storageService, "s3BucketName", bucketName);
         ReflectionTestUtils.setField(storageService, "urlExpirySeconds", urlExpirySeconds);
+        ReflectionTestUtils.setField(storageService, "s3ReadHedger", new S3ReadHedger());
+        ReflectionTestUtils.setField(storageService, "fileKeyLayout", new FileKeyLayout());
+        ReflectionTestUtils.setField(storageService, "uploadSpool", new UploadSpool());
+        ReflectionTestUtils.setField(storageService, "smallFilePacker", new SmallFilePacker());
+        ReflectionTestUtils.setField(storageService, "metadataCatalog", new MetadataCatalog());
+        ReflectionTestUtils.setField(storageService, "usageTracker", new UsageTracker());
     }
 
     // Test successful file search with valid user and search term
@@ -160,6 +179,189 @@ class StorageServiceTest {
         assertEquals("file4.pdf", result.get(1).getFileName());
     }
 
+    // Test sorting by lastModified descending pages through files newest first
+    @Test
+    void searchFiles_SortedByLastModifiedDesc_ReturnsNewestPage() {
+        Instant now = Instant.now();
+        List<S3Object> s3Objects = Arrays.asList(
+            S3Object.builder().key("testUser/a.pdf").size(10L).lastModified(now.minusSeconds(50)).build(),
+            S3Object.builder().key("testUser/b.pdf").size(20L).lastModified(now.minusSeconds(10)).build(),
+            S3Object.builder().key("testUser/c.pdf").size(30L).lastModified(now.minusSeconds(40)).build(),
+            S3Object.builder().key("testUser/d.pdf").size(40L).lastModified(now.minusSeconds(20)).build(),
+            S3Object.builder().key("testUser/e.pdf").size(50L).lastModified(now.minusSeconds(30)).build()
+        );
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(s3Objects).build());
+
+        FileSearchFilter filter = FileSearchFilter.builder().sort("lastModified").direction("desc").build();
+
+        assertEquals(List.of("b.pdf", "d.pdf"), storageService.searchFiles("testUser", null, filter, 0, 2)
+                .stream().map(FileMetadataResponse::getFileName).toList());
+        assertEquals(List.of("e.pdf", "c.pdf"), storageService.searchFiles("testUser", null, filter, 1, 2)
+                .stream().map(FileMetadataResponse::getFileName).toList());
+    }
+
+    // Test a sorted search reads every page of a truncated listing, not just the first
+    @Test
+    void searchFiles_SortedOverTruncatedListing_ReadsAllPages() {
+        Instant now = Instant.now();
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            if (request.continuationToken() == null) {
+                return ListObjectsV2Response.builder().isTruncated(true).nextContinuationToken("page-2").contents(
+                    S3Object.builder().key("testUser/a.pdf").size(10L).lastModified(now).build(),
+                    S3Object.builder().key("testUser/b.pdf").size(20L).lastModified(now).build()).build();
+            }
+            return ListObjectsV2Response.builder().isTruncated(false).contents(
+                S3Object.builder().key("testUser/c.pdf").size(500L).lastModified(now).build()).build();
+        });
+
+        FileSearchFilter filter = FileSearchFilter.builder().sort("size").direction("desc").build();
+
+        assertEquals(List.of("c.pdf", "b.pdf"), storageService.searchFiles("testUser", null, filter, 0, 2)
+                .stream().map(FileMetadataResponse::getFileName).toList());
+        verify(s3Client, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    // Test an unsorted search stops listing once its page is full
+    @Test
+    void searchFiles_UnsortedFirstPage_SkipsLaterListPages() {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(
+            ListObjectsV2Response.builder().isTruncated(true).nextContinuationToken("page-2").contents(
+                S3Object.builder().key("testUser/a.pdf").size(10L).build(),
+                S3Object.builder().key("testUser/b.pdf").size(20L).build()).build());
+
+        assertEquals(List.of("a.pdf"), storageService.searchFiles("testUser", null, 0, 1)
+                .stream().map(FileMetadataResponse::getFileName).toList());
+        verify(s3Client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    // Test size, date and content type filters combine, guessing the type from the extension
+    @Test
+    void searchFiles_WithRangeFilters_ReturnsMatchingFiles() {
+        Instant now = Instant.now();
+        List<S3Object> s3Objects = Arrays.asList(
+            S3Object.builder().key("testUser/big.pdf").size(20_000_000L).lastModified(now).build(),
+            S3Object.builder().key("testUser/small.pdf").size(1024L).lastModified(now).build(),
+            S3Object.builder().key("testUser/big.png").size(30_000_000L).lastModified(now).build(),
+            S3Object.builder().key("testUser/old.pdf").size(40_000_000L).lastModified(now.minusSeconds(86_400)).build()
+        );
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(s3Objects).build());
+
+        FileSearchFilter filter = FileSearchFilter.builder()
+                .minSize(10L * 1024 * 1024)
+                .modifiedAfter(now.minusSeconds(3600))
+                .contentType("application/pdf")
+                .build();
+
+        List<FileMetadataResponse> result = storageService.searchFiles("testUser", null, filter, 0, 10);
+
+        assertEquals(List.of("big.pdf"), result.stream().map(FileMetadataResponse::getFileName).toList());
+    }
+
+    // Test an unknown sort field is rejected before S3 is listed
+    @Test
+    void searchFiles_WithInvalidSort_ThrowsBadRequestException() {
+        FileSearchFilter filter = FileSearchFilter.builder().sort("owner").build();
+
+        BadRequestException exception = assertThrows(BadRequestException.class,
+            () -> storageService.searchFiles("testUser", null, filter, 0, 10));
+
+        assertTrue(exception.getMessage().startsWith("Invalid sort field"));
+        verify(s3Client, never()).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    // Test a streamed listing follows continuation tokens and hands over one page per S3 page
+    @Test
+    void streamFiles_WithTruncatedListing_EmitsEachPage() {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            if (request.continuationToken() == null) {
+                return ListObjectsV2Response.builder().isTruncated(true).nextContinuationToken("page-2").contents(
+                    S3Object.builder().key("testUser/a.pdf").size(1L).lastModified(Instant.now()).build(),
+                    S3Object.builder().key("testUser/b.pdf").size(1L).lastModified(Instant.now()).build()).build();
+            }
+            return ListObjectsV2Response.builder().isTruncated(false).contents(
+                S3Object.builder().key("testUser/c.pdf").size(1L).lastModified(Instant.now()).build()).build();
+        });
+
+        List<List<String>> pages = new ArrayList<>();
+        storageService.streamFiles("testUser", null, null, false)
+                .forEachPage(page -> pages.add(page.stream().map(FileMetadataResponse::getFileName).toList()));
+
+        assertEquals(List.of(List.of("a.pdf", "b.pdf"), List.of("c.pdf")), pages);
+        verify(s3Client, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    // Test streaming over shards merges prefixes into file-name order
+    @Test
+    void streamFiles_WithShardedLayout_MergesPrefixesByFileName() {
+        FileKeyLayout shardedLayout = new FileKeyLayout();
+        ReflectionTestUtils.setField(shardedLayout, "shards", 2);
+        ReflectionTestUtils.setField(shardedLayout, "includeLegacy", false);
+        ReflectionTestUtils.setField(storageService, "fileKeyLayout", shardedLayout);
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            List<S3Object> contents = request.prefix().startsWith("00/")
+                    ? List.of(S3Object.builder().key("00/testUser/a.pdf").size(1L).build(),
+                              S3Object.builder().key("00/testUser/c.pdf").size(1L).build())
+                    : List.of(S3Object.builder().key("01/testUser/b.pdf").size(1L).build());
+            return ListObjectsV2Response.builder().isTruncated(false).contents(contents).build();
+        });
+
+        List<String> names = new ArrayList<>();
+        storageService.streamFiles("testUser", null, null, false)
+                .forEachPage(page -> page.forEach(file -> names.add(file.getFileName())));
+
+        assertEquals(List.of("a.pdf", "b.pdf", "c.pdf"), names);
+    }
+
+    // Test the page ETag is stable for an unchanged listing and changes when a file does
+    @Test
+    void findFiles_WithChangedFile_ChangesETag() {
+        Instant modified = Instant.now();
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(
+                    S3Object.builder().key("testUser/a.pdf").size(1L).lastModified(modified).build()).build())
+                .thenReturn(ListObjectsV2Response.builder().contents(
+                    S3Object.builder().key("testUser/a.pdf").size(1L).lastModified(modified).build()).build())
+                .thenReturn(ListObjectsV2Response.builder().contents(
+                    S3Object.builder().key("testUser/a.pdf").size(2L).lastModified(modified).build()).build());
+
+        SearchPage first = storageService.findFiles("testUser", null, null, 0, 10);
+        SearchPage unchanged = storageService.findFiles("testUser", null, null, 0, 10);
+        SearchPage changed = storageService.findFiles("testUser", null, null, 0, 10);
+
+        assertTrue(first.getETag().startsWith("W/\""));
+        assertEquals(first.getETag(), unchanged.getETag());
+        assertNotEquals(first.getETag(), changed.getETag());
+        assertNull(first.getFiles().get(0).getDownloadUrl());
+    }
+
+    // Test a search over a paginated listing allocates per page, far less per key than keeping a name per key
+    @Test
+    void findFiles_WithLargeListing_AllocatesPerPageNotPerKey() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        FileSearchFilter bySize = FileSearchFilter.builder().sort("size").direction("desc").minSize(100L).build();
+        FileKeyLayout layout = new FileKeyLayout();
+
+        // A term nothing matches, so the search reads every page
+        long withTerm = bytesPerExtraKey(threads, () -> storageService.findFiles("testUser", "invoice", null, 0, 10));
+        long sortedAndFiltered = bytesPerExtraKey(threads, () -> storageService.findFiles("testUser", null, bySize, 0, 10));
+        // Baseline: what holding one file name per scanned key costs, measured the same way
+        long oneNamePerKey = bytesPerExtraKey(threads, () -> retainedNames = pagedObjects.stream()
+                .map(object -> layout.extractFileName(object.key()))
+                .toList());
+
+        assertTrue(withTerm * 4 < oneNamePerKey,
+                "bytes per extra key with a search term: " + withTerm + ", baseline " + oneNamePerKey);
+        assertTrue(sortedAndFiltered * 4 < oneNamePerKey,
+                "bytes per extra key with sort and filter: " + sortedAndFiltered + ", baseline " + oneNamePerKey);
+    }
+
     // Test search term filtering with case insensitive matching
     @Test
     void searchFiles_WithSearchTerm_FiltersCorrectly() {
@@ -189,6 +391,151 @@ class StorageServiceTest {
         assertEquals("Invoice_Final.pdf", result.get(1).getFileName());
     }
 
+    // Test sharded layout fans out across shard prefixes and merges results by file name
+    @Test
+    void searchFiles_WithShardedLayout_MergesShardListingsInOrder() {
+        FileKeyLayout shardedLayout = new FileKeyLayout();
+        ReflectionTestUtils.setField(shardedLayout, "shards", 2);
+        ReflectionTestUtils.setField(shardedLayout, "includeLegacy", true);
+        ReflectionTestUtils.setField(storageService, "fileKeyLayout", shardedLayout);
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            List<S3Object> contents = switch (request.prefix()) {
+                case "00/testUser/" -> List.of(
+                        S3Object.builder().key("00/testUser/b.pdf").size(1L).lastModified(Instant.now()).build());
+                case "01/testUser/" -> List.of(
+                        S3Object.builder().key("01/testUser/a.pdf").size(1L).lastModified(Instant.now()).build(),
+                        S3Object.builder().key("01/testUser/d.pdf").size(1L).lastModified(Instant.now()).build());
+                default -> List.of(
+                        S3Object.builder().key("testUser/c.pdf").size(1L).lastModified(Instant.now()).build());
+            };
+            return ListObjectsV2Response.builder().contents(contents).build();
+        });
+
+        List<FileMetadataResponse> result = storageService.searchFiles("testUser", null, 0, 10);
+
+        assertEquals(List.of("a.pdf", "b.pdf", "c.pdf", "d.pdf"),
+                result.stream().map(FileMetadataResponse::getFileName).toList());
+        verify(s3Client, times(3)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    // Test a name at both its legacy and sharded key is listed once, as the newer copy, and deleted from both
+    @Test
+    void searchAndDelete_WithLegacyDuplicate_ShowsNewestAndRemovesBoth() {
+        FileKeyLayout shardedLayout = new FileKeyLayout();
+        ReflectionTestUtils.setField(shardedLayout, "shards", 2);
+        ReflectionTestUtils.setField(shardedLayout, "includeLegacy", true);
+        ReflectionTestUtils.setField(storageService, "fileKeyLayout", shardedLayout);
+        String shardedKey = shardedLayout.buildFileKey("testUser", "a.pdf");
+        Instant older = Instant.parse("2025-01-01T00:00:00Z");
+        Instant newer = Instant.parse("2025-06-01T00:00:00Z");
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            List<S3Object> contents = request.prefix().equals("testUser/")
+                    ? List.of(S3Object.builder().key("testUser/a.pdf").size(1L).lastModified(older).build())
+                    : shardedKey.startsWith(request.prefix())
+                    ? List.of(S3Object.builder().key(shardedKey).size(2L).lastModified(newer).build())
+                    : List.of();
+            return ListObjectsV2Response.builder().contents(contents).build();
+        });
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().contentLength(2L).lastModified(newer).build());
+
+        List<FileMetadataResponse> result = storageService.searchFiles("testUser", null, 0, 10);
+        storageService.deleteFile("testUser", "a.pdf");
+
+        assertEquals(1, result.size());
+        assertEquals(shardedKey, result.get(0).getFileKey());
+        verify(s3Client).deleteObject(argThat((DeleteObjectRequest request) -> request.key().equals(shardedKey)));
+        verify(s3Client).deleteObject(argThat((DeleteObjectRequest request) -> request.key().equals("testUser/a.pdf")));
+    }
+
+    // Test write-behind uploads are visible to search before they reach S3
+    @Test
+    void searchFiles_WithSpooledUpload_IncludesUnflushedFile(@TempDir Path spoolDir) throws Exception {
+        UploadSpool spool = new UploadSpool();
+        ReflectionTestUtils.setField(spool, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(spool, "enabled", true);
+        ReflectionTestUtils.setField(spool, "spoolDir", spoolDir.toString());
+        ReflectionTestUtils.setField(spool, "flushConcurrency", 1);
+        spool.init();
+        ReflectionTestUtils.setField(storageService, "uploadSpool", spool);
+
+        storageService.uploadFile("testUser", new MockMultipartFile(
+            "file", "b.pdf", "application/pdf", "spooled".getBytes()));
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().contents(
+                    S3Object.builder().key("testUser/a.pdf").size(1L).lastModified(Instant.now()).build(),
+                    S3Object.builder().key("testUser/c.pdf").size(1L).lastModified(Instant.now()).build()).build());
+
+        List<FileMetadataResponse> result = storageService.searchFiles("testUser", null, 0, 10);
+        spool.shutdown();
+
+        assertEquals(List.of("a.pdf", "b.pdf", "c.pdf"), result.stream().map(FileMetadataResponse::getFileName).toList());
+        assertEquals(7L, result.get(1).getFileSize());
+        assertEquals("/api/freight-fox/s3-bucket/download/b.pdf?userName=testUser", result.get(1).getDownloadUrl());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    // Test a presigned upload replaces an older spooled copy instead of staying hidden behind it
+    @Test
+    void verifyStoredFile_WithSpooledCopy_DropsLocalCopy(@TempDir Path spoolDir) throws Exception {
+        UploadSpool spool = new UploadSpool();
+        ReflectionTestUtils.setField(spool, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(spool, "enabled", true);
+        ReflectionTestUtils.setField(spool, "spoolDir", spoolDir.toString());
+        ReflectionTestUtils.setField(spool, "flushConcurrency", 1);
+        spool.init();
+        ReflectionTestUtils.setField(storageService, "uploadSpool", spool);
+
+        storageService.uploadFile("testUser", new MockMultipartFile(
+            "file", "b.pdf", "application/pdf", "spooled".getBytes()));
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder()
+                .contentLength(2048L).lastModified(Instant.now()).build());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(S3Object.builder().key("testUser/b.pdf").size(2048L).lastModified(Instant.now()).build()).build());
+
+        storageService.verifyStoredFile("b.pdf", "testUser/b.pdf");
+        List<FileMetadataResponse> result = storageService.searchFiles("testUser", null, 0, 10);
+        spool.shutdown();
+
+        assertNull(spool.find("testUser/b.pdf"));
+        assertEquals(1, result.size());
+        assertEquals(2048L, result.get(0).getFileSize());
+    }
+
+    // Test a complete S3 listing is recorded in the catalog and serves the next search
+    @Test
+    void searchFiles_WithCatalogEnabled_ListsS3Once(@TempDir Path catalogDir) throws Exception {
+        SmallFilePacker packer = new SmallFilePacker();
+        ReflectionTestUtils.setField(packer, "keyPrefix", "_packs");
+        MetadataCatalog catalog = new MetadataCatalog();
+        ReflectionTestUtils.setField(catalog, "fileKeyLayout", new FileKeyLayout());
+        ReflectionTestUtils.setField(catalog, "smallFilePacker", packer);
+        ReflectionTestUtils.setField(catalog, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(catalog, "enabled", true);
+        ReflectionTestUtils.setField(catalog, "catalogDir", catalogDir.toString());
+        ReflectionTestUtils.setField(catalog, "compactAfterRecords", 100);
+        catalog.init();
+        ReflectionTestUtils.setField(storageService, "metadataCatalog", catalog);
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder().isTruncated(false).contents(
+                    S3Object.builder().key("testUser/a.pdf").size(1L).lastModified(Instant.now()).build(),
+                    S3Object.builder().key("testUser/b.pdf").size(2L).lastModified(Instant.now()).build()).build());
+
+        storageService.searchFiles("testUser", null, 0, 10);
+        List<FileMetadataResponse> result = storageService.searchFiles("testUser", null, 0, 10);
+        catalog.shutdown();
+
+        assertEquals(List.of("a.pdf", "b.pdf"), result.stream().map(FileMetadataResponse::getFileName).toList());
+        assertEquals(2L, result.get(1).getFileSize());
+        verify(s3Client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
     // Test successful file upload with valid parameters
     @Test
     void uploadFile_WithValidFile_ReturnsFileMetadata() throws Exception {
@@ -212,6 +559,34 @@ class StorageServiceTest {
         verify(s3Client, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
     }
 
+    // Test overwriting an S3 file without a catalog counts the size difference, not a new file
+    @Test
+    void uploadFile_OverwritingWithoutCatalog_CountsSizeDifference() {
+        UsageTracker usageTracker = new UsageTracker();
+        ReflectionTestUtils.setField(usageTracker, "s3Client", s3Client);
+        ReflectionTestUtils.setField(usageTracker, "s3ReadHedger", new S3ReadHedger());
+        ReflectionTestUtils.setField(usageTracker, "fileKeyLayout", new FileKeyLayout());
+        ReflectionTestUtils.setField(usageTracker, "uploadSpool", new UploadSpool());
+        ReflectionTestUtils.setField(usageTracker, "smallFilePacker", new SmallFilePacker());
+        ReflectionTestUtils.setField(usageTracker, "metadataCatalog", new MetadataCatalog());
+        ReflectionTestUtils.setField(usageTracker, "s3BucketName", bucketName);
+        ReflectionTestUtils.setField(storageService, "usageTracker", usageTracker);
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .isTruncated(false)
+                .contents(S3Object.builder().key("testUser/test.pdf").size(100L).build()).build());
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().contentLength(100L).lastModified(Instant.now()).build());
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+        usageTracker.getUsage("testUser");
+
+        storageService.uploadFile("testUser", new MockMultipartFile("file", "test.pdf", "application/pdf", new byte[10]));
+
+        assertEquals(10L, usageTracker.getUsage("testUser").getTotalBytes());
+        assertEquals(1L, usageTracker.getUsage("testUser").getFileCount());
+    }
+
     // Test file upload validation with empty username
     @Test
     void uploadFile_WithEmptyUserName_ThrowsFileUploadException() {
@@ -275,6 +650,8 @@ class StorageServiceTest {
 
         verify(s3Client, times(1)).headObject(any(HeadObjectRequest.class));
         verify(s3Client, times(1)).deleteObject(any(DeleteObjectRequest.class));
+        verify(eventPublisher, times(1)).publishEvent(argThat((FileChangeEvent event) ->
+                event.getType() == FileChangeEvent.Type.DELETE && event.getFileKey().equals("testUser/test.pdf")));
     }
 
     // Test file deletion validation with empty username
@@ -360,6 +737,32 @@ class StorageServiceTest {
         verify(s3Client, times(1)).headObject(any(HeadObjectRequest.class));
     }
 
+    // Test verifying an uploaded file reports size and timestamp from HEAD
+    @Test
+    void verifyStoredFile_WithExistingObject_ReturnsMetadataFromHead() {
+        Instant lastModified = Instant.now();
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().contentLength(2048L).lastModified(lastModified).build());
+
+        FileMetadataResponse result = storageService.verifyStoredFile("test.pdf", "testUser/test.pdf");
+
+        assertEquals("testUser/test.pdf", result.getFileKey());
+        assertEquals(2048L, result.getFileSize());
+        assertEquals(lastModified, result.getLastModified());
+    }
+
+    // Test verifying an upload that never reached S3 is rejected
+    @Test
+    void verifyStoredFile_WithMissingObject_ThrowsBadRequestException() {
+        when(s3Client.headObject(any(HeadObjectRequest.class)))
+                .thenThrow(NoSuchKeyException.builder().build());
+
+        BadRequestException exception = assertThrows(BadRequestException.class,
+            () -> storageService.verifyStoredFile("test.pdf", "testUser/test.pdf"));
+
+        assertEquals("Uploaded file not found: test.pdf", exception.getMessage());
+    }
+
     // Test download URL generation with basic validation
     @Test
     void generateDownloadUrl_WithValidFileKey_ReturnsUrl() {
@@ -373,4 +776,56 @@ class StorageServiceTest {
             }
         });
     }
-}
\ No newline at end of file
+
+    private List<S3Object> pagedObjects;
+    private List<String> retainedNames;
+
+    /**
+     * Allocation per key between a 10,000 and a 50,000 key listing, served in 1000-key
+     * pages with continuation tokens as S3 returns them.
+     */
+    private long bytesPerExtraKey(com.sun.management.ThreadMXBean threads, Runnable search) {
+        stubPagedListing(10_000);
+        long small = bytesPerRun(threads, search);
+        stubPagedListing(50_000);
+        long large = bytesPerRun(threads, search);
+        return (large - small) / 40_000;
+    }
+
+    private void stubPagedListing(int keys) {
+        int pageSize = 1000;
+        Instant now = Instant.now();
+        pagedObjects = new ArrayList<>(keys);
+        for (int i = 0; i < keys; i++) {
+            String fileName = String.format(i % 100 == 0 ? "report-%06d.pdf" : "file-%06d.pdf", i);
+            pagedObjects.add(S3Object.builder().key("testUser/" + fileName).size((long) i).lastModified(now).build());
+        }
+        // Built up front, so serving a page allocates nothing per key
+        List<ListObjectsV2Response> pages = new ArrayList<>();
+        for (int start = 0; start < keys; start += pageSize) {
+            int end = Math.min(keys, start + pageSize);
+            pages.add(ListObjectsV2Response.builder()
+                    .contents(pagedObjects.subList(start, end))
+                    .isTruncated(end < keys)
+                    .nextContinuationToken(end < keys ? String.valueOf(pages.size() + 1) : null)
+                    .build());
+        }
+        // Lenient: the baseline measurement reads the objects without listing
+        lenient().when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            String token = invocation.<ListObjectsV2Request>getArgument(0).continuationToken();
+            return pages.get(token == null ? 0 : Integer.parseInt(token));
+        });
+    }
+
+    private long bytesPerRun(com.sun.management.ThreadMXBean threads, Runnable search) {
+        int runs = 20;
+        for (int i = 0; i < runs; i++) {
+            search.run();
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < runs; i++) {
+            search.run();
+        }
+        return (threads.getCurrentThreadAllocatedBytes() - before) / runs;
+    }
+}
@@ -0,0 +1,166 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.model.SpoolEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UploadSpoolTest {
+
+    @TempDir
+    Path spoolDir;
+
+    private S3Client s3Client;
+    private final List<UploadSpool> spools = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        spools.forEach(UploadSpool::shutdown);
+    }
+
+    // Test a spooled upload is readable immediately and removed from disk once flushed
+    @Test
+    void flushPending_WithSpooledUpload_PutsToS3AndClearsSpool() throws Exception {
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenReturn(PutObjectResponse.builder().build());
+        UploadSpool spool = newSpool();
+
+        SpoolEntry entry = spool.enqueue("testUser", "test.pdf", "testUser/test.pdf", "application/pdf", "content".getBytes());
+        try (InputStream content = spool.openContent(entry)) {
+            assertEquals("content", new String(content.readAllBytes()));
+        }
+
+        spool.startFlush().join();
+
+        verify(s3Client, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertEquals(0, spool.pendingCount());
+        assertEquals(0, fileCount());
+    }
+
+    // Test the scheduled flush returns while a PUT is still running and does not resubmit it
+    @Test
+    void flushPending_WithSlowPut_ReturnsWithoutWaiting() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            release.await();
+            return PutObjectResponse.builder().build();
+        });
+        UploadSpool spool = newSpool();
+        spool.enqueue("testUser", "test.pdf", "testUser/test.pdf", null, "content".getBytes());
+
+        CompletableFuture<Void> flush = spool.startFlush();
+        assertFalse(flush.isDone());
+        assertTrue(spool.startFlush().isDone());
+
+        release.countDown();
+        flush.get(5, TimeUnit.SECONDS);
+        assertEquals(0, spool.pendingCount());
+        verify(s3Client, times(1)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    // Test uploads acknowledged before a crash are replayed by the next instance
+    @Test
+    void init_AfterCrash_ReplaysJournaledUploads() throws Exception {
+        UploadSpool crashed = newSpool();
+        crashed.enqueue("testUser", "a.pdf", "testUser/a.pdf", null, "a".getBytes());
+        crashed.enqueue("testUser", "b.pdf", "testUser/b.pdf", null, "b".getBytes());
+
+        UploadSpool restarted = newSpool();
+
+        assertEquals(2, restarted.pendingCount());
+        assertNotNull(restarted.find("testUser/a.pdf"));
+        assertEquals(2, restarted.pendingForUser("testUser").size());
+    }
+
+    // Test a failed flush keeps the upload pending and retries it
+    @Test
+    void flushPending_WithS3Failure_RetriesLater() throws Exception {
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().message("S3 Error").build())
+                .thenReturn(PutObjectResponse.builder().build());
+        UploadSpool spool = newSpool();
+        spool.enqueue("testUser", "test.pdf", "testUser/test.pdf", null, "content".getBytes());
+
+        spool.startFlush().join();
+        assertEquals(1, spool.pendingCount());
+
+        spool.startFlush().join();
+        assertEquals(0, spool.pendingCount());
+        verify(s3Client, times(2)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    // Test re-uploading the same key keeps only the newest bytes pending
+    @Test
+    void enqueue_WithSameKey_SupersedesOlderUpload() throws Exception {
+        UploadSpool spool = newSpool();
+        spool.enqueue("testUser", "test.pdf", "testUser/test.pdf", null, "old".getBytes());
+        SpoolEntry newer = spool.enqueue("testUser", "test.pdf", "testUser/test.pdf", null, "newer".getBytes());
+
+        assertEquals(1, spool.pendingCount());
+        assertSame(newer, spool.find("testUser/test.pdf"));
+        assertEquals(2, fileCount());
+    }
+
+    // Test deleting a spooled upload before it is flushed never reaches S3
+    @Test
+    void remove_BeforeFlush_SkipsS3() throws Exception {
+        UploadSpool spool = newSpool();
+        spool.enqueue("testUser", "test.pdf", "testUser/test.pdf", null, "content".getBytes());
+
+        assertTrue(spool.remove("testUser/test.pdf"));
+        spool.startFlush().join();
+
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        assertEquals(0, fileCount());
+    }
+
+    private UploadSpool newSpool() throws Exception {
+        UploadSpool spool = new UploadSpool();
+        ReflectionTestUtils.setField(spool, "s3Client", s3Client);
+        ReflectionTestUtils.setField(spool, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(spool, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(spool, "enabled", true);
+        ReflectionTestUtils.setField(spool, "spoolDir", spoolDir.toString());
+        ReflectionTestUtils.setField(spool, "flushConcurrency", 2);
+        ReflectionTestUtils.setField(spool, "batchSize", 10);
+        ReflectionTestUtils.setField(spool, "retryBackoffMs", 0L);
+        ReflectionTestUtils.setField(spool, "s3BucketName", "test-bucket");
+        spool.init();
+        spools.add(spool);
+        return spool;
+    }
+
+    private long fileCount() throws Exception {
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            return files.count();
+        }
+    }
+}
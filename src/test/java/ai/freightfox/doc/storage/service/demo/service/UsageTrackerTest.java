@@ -0,0 +1,168 @@
+package ai.freightfox.doc.storage.service.demo.service;
+
+import ai.freightfox.doc.storage.service.demo.dto.response.UsageResponse;
+import ai.freightfox.doc.storage.service.demo.event.FileChangeEvent;
+import ai.freightfox.doc.storage.service.demo.globalExceptionHandler.exceptionHandlers.QuotaExceededException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UsageTrackerTest {
+
+    private S3Client s3Client;
+    private UsageTracker usageTracker;
+
+    @BeforeEach
+    void setUp() {
+        s3Client = mock(S3Client.class);
+        usageTracker = new UsageTracker();
+        ReflectionTestUtils.setField(usageTracker, "s3Client", s3Client);
+        ReflectionTestUtils.setField(usageTracker, "s3ReadHedger", new S3ReadHedger());
+        ReflectionTestUtils.setField(usageTracker, "fileKeyLayout", new FileKeyLayout());
+        ReflectionTestUtils.setField(usageTracker, "uploadSpool", new UploadSpool());
+        SmallFilePacker packer = new SmallFilePacker();
+        ReflectionTestUtils.setField(packer, "keyPrefix", "_packs");
+        ReflectionTestUtils.setField(usageTracker, "smallFilePacker", packer);
+        ReflectionTestUtils.setField(usageTracker, "metadataCatalog", new MetadataCatalog());
+        ReflectionTestUtils.setField(usageTracker, "s3BucketName", "test-bucket");
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(listing(object("testUser/a.pdf", 100L), object("testUser/b.pdf", 50L)));
+    }
+
+    // Test usage is loaded by one scan and later reads are served from the counters
+    @Test
+    void getUsage_AfterFirstScan_ServesFromCounters() {
+        usageTracker.recordChange("testUser", 10L, 1L);
+
+        UsageResponse first = usageTracker.getUsage("testUser");
+        usageTracker.recordChange("testUser", 25L, 1L);
+        UsageResponse second = usageTracker.getUsage("testUser");
+
+        assertEquals(150L, first.getTotalBytes());
+        assertEquals(2L, first.getFileCount());
+        assertEquals(175L, second.getTotalBytes());
+        assertEquals(3L, second.getFileCount());
+        assertNotNull(second.getLastReconciledAt());
+        verify(s3Client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    // Test a change relayed from another instance makes the next read recount, while local ones do not
+    @Test
+    void onFileChange_WithRelayedChange_RecountsOnNextRead() {
+        usageTracker.getUsage("testUser");
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(listing(object("testUser/a.pdf", 100L), object("testUser/b.pdf", 50L), object("testUser/c.pdf", 5L)));
+
+        usageTracker.onFileChange(FileChangeEvent.builder().type(FileChangeEvent.Type.UPSERT).fileKey("testUser/c.pdf").build());
+        assertEquals(150L, usageTracker.getUsage("testUser").getTotalBytes());
+
+        usageTracker.onFileChange(FileChangeEvent.builder().type(FileChangeEvent.Type.UPSERT).fileKey("testUser/c.pdf")
+                .origin("node-b").build());
+        UsageResponse usage = usageTracker.getUsage("testUser");
+
+        assertEquals(155L, usage.getTotalBytes());
+        assertEquals(3L, usage.getFileCount());
+        verify(s3Client, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    // Test reconciliation moves drifted counters back to what the bucket holds
+    @Test
+    void reconcileAll_WithDriftedCounters_CorrectsToScannedTotals() {
+        usageTracker.getUsage("testUser");
+        usageTracker.recordChange("testUser", 999L, 5L);
+
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(listing(object("testUser/a.pdf", 100L)));
+        usageTracker.reconcileAll();
+
+        UsageResponse usage = usageTracker.getUsage("testUser");
+        assertEquals(100L, usage.getTotalBytes());
+        assertEquals(1L, usage.getFileCount());
+    }
+
+    // Test a change that would pass the byte quota is rejected while smaller ones pass
+    @Test
+    void checkQuota_PastByteQuota_ThrowsQuotaExceededException() {
+        ReflectionTestUtils.setField(usageTracker, "maxBytes", 200L);
+
+        usageTracker.checkQuota("testUser", 50L, 1L);
+        QuotaExceededException exception = assertThrows(QuotaExceededException.class,
+                () -> usageTracker.checkQuota("testUser", 51L, 1L));
+
+        assertTrue(exception.getMessage().contains("200 bytes"));
+    }
+
+    // Test a user at the byte quota can still overwrite with a file of the same size, but not grow
+    @Test
+    void checkQuota_AtByteQuota_AllowsSameSizeOverwrite() {
+        ReflectionTestUtils.setField(usageTracker, "maxBytes", 150L);
+
+        assertDoesNotThrow(() -> usageTracker.checkQuota("testUser", 0L, 0L));
+        assertThrows(QuotaExceededException.class, () -> usageTracker.checkQuota("testUser", 1L, 0L));
+    }
+
+    // Test a relayed echo of this instance's own write is skipped, so it costs no recount
+    @Test
+    void onFileChange_WithEchoOfLocalWrite_SkipsRecount() {
+        ReflectionTestUtils.setField(usageTracker, "echoWindowMs", 60_000L);
+        usageTracker.getUsage("testUser");
+
+        usageTracker.onFileChange(FileChangeEvent.builder().type(FileChangeEvent.Type.UPSERT)
+                .fileKey("testUser/c.pdf").eTag("\"abc\"").build());
+        usageTracker.onFileChange(FileChangeEvent.builder().type(FileChangeEvent.Type.UPSERT)
+                .fileKey("testUser/c.pdf").eTag("\"abc\"").origin("sqs").build());
+        usageTracker.getUsage("testUser");
+        verify(s3Client, times(1)).listObjectsV2(any(ListObjectsV2Request.class));
+
+        // A later write with another ETag comes from elsewhere
+        usageTracker.onFileChange(FileChangeEvent.builder().type(FileChangeEvent.Type.UPSERT)
+                .fileKey("testUser/c.pdf").eTag("\"def\"").origin("sqs").build());
+        usageTracker.getUsage("testUser");
+        verify(s3Client, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    // Test a held reservation counts against later checks until it is released or committed
+    @Test
+    void reserve_WhileAnotherUploadHoldsSpace_RejectsUntilReleased() {
+        ReflectionTestUtils.setField(usageTracker, "maxBytes", 200L);
+
+        UsageTracker.Reservation first = usageTracker.reserve("testUser", 40L, 1L);
+        assertThrows(QuotaExceededException.class, () -> usageTracker.reserve("testUser", 40L, 1L));
+        assertEquals(150L, usageTracker.getUsage("testUser").getTotalBytes());
+
+        first.release();
+        UsageTracker.Reservation second = usageTracker.reserve("testUser", 40L, 1L);
+        second.commit();
+        second.release();
+
+        UsageResponse usage = usageTracker.getUsage("testUser");
+        assertEquals(190L, usage.getTotalBytes());
+        assertEquals(3L, usage.getFileCount());
+        assertThrows(QuotaExceededException.class, () -> usageTracker.checkQuota("testUser", 11L, 1L));
+    }
+
+    // Test no listing is made for quota checks when no quota is configured
+    @Test
+    void checkQuota_WithoutQuota_SkipsScan() {
+        usageTracker.checkQuota("testUser", Long.MAX_VALUE, 1L);
+
+        verifyNoInteractions(s3Client);
+    }
+
+    private ListObjectsV2Response listing(S3Object... objects) {
+        return ListObjectsV2Response.builder().isTruncated(false).contents(objects).build();
+    }
+
+    private S3Object object(String key, long size) {
+        return S3Object.builder().key(key).size(size).build();
+    }
+}